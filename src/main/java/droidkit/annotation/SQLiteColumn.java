@@ -9,7 +9,7 @@ import java.lang.annotation.Target;
  * @author Daniel Serdyukov
  */
 @Target({ElementType.FIELD})
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 public @interface SQLiteColumn {
 
     String value() default "";
@@ -18,4 +18,8 @@ public @interface SQLiteColumn {
 
     boolean index() default false;
 
+    boolean enumAsInteger() default false;
+
+    int scale() default -1;
+
 }
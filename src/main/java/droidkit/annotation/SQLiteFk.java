@@ -9,7 +9,7 @@ import java.lang.annotation.Target;
  * @author Daniel Serdyukov
  */
 @Target({ElementType.FIELD})
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 public @interface SQLiteFk {
 
     Class<?> value();
@@ -0,0 +1,22 @@
+package droidkit.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author Daniel Serdyukov
+ */
+@Target({})
+@Retention(RetentionPolicy.SOURCE)
+public @interface SQLiteIndex {
+
+    String[] value();
+
+    String name() default "";
+
+    boolean unique() default false;
+
+    String where() default "";
+
+}
@@ -9,15 +9,25 @@ import java.lang.annotation.Target;
  * @author Daniel Serdyukov
  */
 @Target({ElementType.TYPE})
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 public @interface SQLiteObject {
 
     String value();
 
     boolean activeRecord() default true;
 
+    boolean dirtyTracking() default false;
+
+    int identityMapSize() default 0;
+
     String[] uniqueOn() default {};
 
     int uniqueConflictClause() default 5;
 
+    SQLiteIndex[] indices() default {};
+
+    String[] primaryKey() default {};
+
+    boolean withoutRowId() default false;
+
 }
@@ -14,4 +14,6 @@ public @interface SQLiteRelation {
 
     String setter() default "";
 
+    boolean lazy() default false;
+
 }
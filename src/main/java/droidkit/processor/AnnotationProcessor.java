@@ -5,6 +5,7 @@ import droidkit.processor.app.ActivityScanner;
 import droidkit.processor.app.FragmentScanner;
 import droidkit.processor.content.LoaderCallbacksScanner;
 import droidkit.processor.sqlite.SQLiteObjectScanner;
+import droidkit.processor.sqlite.SQLiteQueryScanner;
 import droidkit.processor.view.ViewScanner;
 import rx.Observable;
 import rx.functions.Action0;
@@ -16,35 +17,41 @@ import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
 import javax.tools.Diagnostic;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * @author Daniel Serdyukov
  */
 @SupportedAnnotationTypes({
         "droidkit.annotation.SQLiteObject",
+        "droidkit.annotation.SQLiteQuery",
         "droidkit.annotation.OnCreateLoader",
         "droidkit.annotation.InjectView",
         "droidkit.annotation.OnClick",
         "droidkit.annotation.OnActionClick"
 })
+@SupportedOptions({
+        SQLiteObjectScanner.OPTION_SCHEMA_DIR,
+        SQLiteObjectScanner.OPTION_SCHEMA_VERSION,
+        SQLiteObjectScanner.OPTION_SCHEMA_DROP_TABLES
+})
 public class AnnotationProcessor extends AbstractProcessor {
 
-    private final Map<String, Factory> mFactories = new HashMap<>();
+    private final Map<String, Factory> mFactories = new LinkedHashMap<>();
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
         final ProcessingEnv env = new ProcessingEnv(processingEnv);
+        SQLiteObjectScanner.reset();
         mFactories.put(SQLiteObject.class.getName(), new SQLiteObjectFactory(env));
+        mFactories.put(SQLiteQuery.class.getName(), new SQLiteQueryFactory(env));
         mFactories.put(OnCreateLoader.class.getName(), new LoaderCallbacksFactory(env));
         final UiComponentFactory uiComponentFactory = new UiComponentFactory(env);
         mFactories.put(InjectView.class.getName(), uiComponentFactory);
@@ -62,8 +69,15 @@ public class AnnotationProcessor extends AbstractProcessor {
         if (annotations.isEmpty()) {
             return false;
         }
-        Observable.from(annotations)
+        Observable.<TypeElement>from(annotations)
                 .filter(new HasFactory(mFactories))
+                .toSortedList(new FactoryOrder(mFactories))
+                .flatMap(new Func1<List<TypeElement>, Observable<TypeElement>>() {
+                    @Override
+                    public Observable<TypeElement> call(List<TypeElement> elements) {
+                        return Observable.from(elements);
+                    }
+                })
                 .flatMap(new GetFactory(mFactories, roundEnv))
                 .subscribe(new Action1<ElementScanner>() {
                     @Override
@@ -140,6 +154,37 @@ public class AnnotationProcessor extends AbstractProcessor {
 
     }
 
+    private static class SQLiteQueryFactory implements Factory {
+
+        private final Set<Element> mSingleHit = new HashSet<>();
+
+        private final ProcessingEnv mProcessingEnv;
+
+        private SQLiteQueryFactory(ProcessingEnv processingEnv) {
+            mProcessingEnv = processingEnv;
+        }
+
+        @Override
+        public Observable<ElementScanner> call(RoundEnvironment roundEnv, TypeElement element) {
+            return Observable.from(roundEnv.getElementsAnnotatedWith(element))
+                    .map(new GetEnclosingElement())
+                    .filter(new NotNestedClass(mProcessingEnv))
+                    .filter(new Func1<Element, Boolean>() {
+                        @Override
+                        public Boolean call(Element element) {
+                            return mSingleHit.add(element);
+                        }
+                    })
+                    .map(new Func1<Element, ElementScanner>() {
+                        @Override
+                        public ElementScanner call(Element element) {
+                            return new SQLiteQueryScanner(mProcessingEnv, (TypeElement) element);
+                        }
+                    });
+        }
+
+    }
+
     private static class LoaderCallbacksFactory implements Factory {
 
         private final ProcessingEnv mProcessingEnv;
@@ -209,6 +254,22 @@ public class AnnotationProcessor extends AbstractProcessor {
     //endregion
 
     //region filters
+    private static class FactoryOrder implements Func2<TypeElement, TypeElement, Integer> {
+
+        private final List<String> mOrder;
+
+        private FactoryOrder(Map<String, Factory> factories) {
+            mOrder = new ArrayList<>(factories.keySet());
+        }
+
+        @Override
+        public Integer call(TypeElement lhs, TypeElement rhs) {
+            return mOrder.indexOf(lhs.getQualifiedName().toString()) -
+                    mOrder.indexOf(rhs.getQualifiedName().toString());
+        }
+
+    }
+
     private static class GetEnclosingElement implements Func1<Element, Element> {
 
         @Override
@@ -1,5 +1,7 @@
 package droidkit.processor;
 
+import com.sun.source.tree.ImportTree;
+import com.sun.source.util.TreePath;
 import com.sun.source.util.Trees;
 import com.sun.tools.javac.processing.JavacProcessingEnvironment;
 import com.sun.tools.javac.tree.JCTree;
@@ -9,6 +11,7 @@ import javax.annotation.processing.Messager;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
@@ -17,7 +20,11 @@ import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * @author Daniel Serdyukov
@@ -36,6 +43,8 @@ public class ProcessingEnv {
 
     private final Filer mFiler;
 
+    private final Map<String, String> mOptions;
+
     public ProcessingEnv(ProcessingEnvironment processingEnv) {
         mJavacEnv = (JavacProcessingEnvironment) processingEnv;
         mLogger = processingEnv.getMessager();
@@ -43,6 +52,7 @@ public class ProcessingEnv {
         mTypes = processingEnv.getTypeUtils();
         mTrees = Trees.instance(processingEnv);
         mFiler = processingEnv.getFiler();
+        mOptions = processingEnv.getOptions();
     }
 
     public JavacProcessingEnvironment getJavacEnv() {
@@ -84,6 +94,28 @@ public class ProcessingEnv {
         return mTypes.asElement(t1);
     }
 
+    public PackageElement asPackage(String name) {
+        return mElements.getPackageElement(name);
+    }
+
+    public List<String> getImports(Element element) {
+        final TreePath path = mTrees.getPath(element);
+        if (path == null) {
+            return Collections.emptyList();
+        }
+        final List<String> imports = new ArrayList<>();
+        for (final ImportTree importTree : path.getCompilationUnit().getImports()) {
+            if (!importTree.isStatic()) {
+                imports.add(importTree.getQualifiedIdentifier().toString());
+            }
+        }
+        return imports;
+    }
+
+    public String getOption(String key) {
+        return mOptions.get(key);
+    }
+
     public JavaFileObject createSourceFile(CharSequence name, Element... originatingElements) throws IOException {
         return mFiler.createSourceFile(name, originatingElements);
     }
@@ -20,15 +20,35 @@ class BigDecimalConversion extends DoubleConversion {
     }
 
     @Override
-    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final String columnName,
+    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final int columnIndex,
                                                         TypeMirror type) {
         return new Action1<CodeBlock.Builder>() {
             @Override
             public void call(CodeBlock.Builder builder) {
-                builder.addStatement("object.$L = $T.getBigDecimal(cursor, $S)", fieldName,
-                        ClassName.get("droidkit.util", "Cursors"), columnName);
+                builder.addStatement("object.$1L = cursor.isNull(indices[$2L]) ? null : " +
+                                "$3T.valueOf(cursor.getDouble(indices[$2L]))",
+                        fieldName, columnIndex, ClassName.get(BigDecimal.class));
             }
         };
     }
 
+    @Override
+    public Action1<CodeBlock.Builder> bindToStatement(final String value, final String bindIndex) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.beginControlFlow("if ($L == null)", value)
+                        .addStatement("stmt.bindNull($L)", bindIndex)
+                        .nextControlFlow("else")
+                        .addStatement("stmt.bindDouble($L, $L.doubleValue())", bindIndex, value)
+                        .endControlFlow();
+            }
+        };
+    }
+
+    @Override
+    public String bindArgument(String value) {
+        return value + " == null ? null : " + value + ".doubleValue()";
+    }
+
 }
@@ -20,15 +20,35 @@ class BigIntegerConversion extends IntConversion {
     }
 
     @Override
-    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final String columnName,
+    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final int columnIndex,
                                                         TypeMirror type) {
         return new Action1<CodeBlock.Builder>() {
             @Override
             public void call(CodeBlock.Builder builder) {
-                builder.addStatement("object.$L = $T.getBigInteger(cursor, $S)", fieldName,
-                        ClassName.get("droidkit.util", "Cursors"), columnName);
+                builder.addStatement("object.$1L = cursor.isNull(indices[$2L]) ? null : " +
+                                "$3T.valueOf(cursor.getLong(indices[$2L]))",
+                        fieldName, columnIndex, ClassName.get(BigInteger.class));
             }
         };
     }
 
+    @Override
+    public Action1<CodeBlock.Builder> bindToStatement(final String value, final String bindIndex) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.beginControlFlow("if ($L == null)", value)
+                        .addStatement("stmt.bindNull($L)", bindIndex)
+                        .nextControlFlow("else")
+                        .addStatement("stmt.bindLong($L, $L.longValue())", bindIndex, value)
+                        .endControlFlow();
+            }
+        };
+    }
+
+    @Override
+    public String bindArgument(String value) {
+        return value + " == null ? null : " + value + ".longValue()";
+    }
+
 }
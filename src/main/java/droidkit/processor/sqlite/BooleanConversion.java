@@ -1,6 +1,5 @@
 package droidkit.processor.sqlite;
 
-import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import droidkit.processor.ProcessingEnv;
 import rx.functions.Action1;
@@ -20,15 +19,29 @@ class BooleanConversion extends IntConversion {
     }
 
     @Override
-    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final String columnName,
+    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final int columnIndex,
                                                         TypeMirror type) {
         return new Action1<CodeBlock.Builder>() {
             @Override
             public void call(CodeBlock.Builder builder) {
-                builder.addStatement("object.$L = $T.getBoolean(cursor, $S)", fieldName,
-                        ClassName.get("droidkit.util", "Cursors"), columnName);
+                builder.addStatement("object.$L = cursor.getInt(indices[$L]) != 0", fieldName, columnIndex);
             }
         };
     }
 
+    @Override
+    public Action1<CodeBlock.Builder> bindToStatement(final String value, final String bindIndex) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.addStatement("stmt.bindLong($L, $L ? 1 : 0)", bindIndex, value);
+            }
+        };
+    }
+
+    @Override
+    public String bindArgument(String value) {
+        return value + " ? 1 : 0";
+    }
+
 }
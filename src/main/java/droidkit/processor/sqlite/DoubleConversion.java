@@ -1,6 +1,5 @@
 package droidkit.processor.sqlite;
 
-import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import droidkit.processor.ProcessingEnv;
 import rx.functions.Action1;
@@ -20,13 +19,12 @@ class DoubleConversion extends FloatConversion {
     }
 
     @Override
-    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final String columnName,
+    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final int columnIndex,
                                                         TypeMirror type) {
         return new Action1<CodeBlock.Builder>() {
             @Override
             public void call(CodeBlock.Builder builder) {
-                builder.addStatement("object.$L = $T.getDouble(cursor, $S)", fieldName,
-                        ClassName.get("droidkit.util", "Cursors"), columnName);
+                builder.addStatement("object.$L = cursor.getDouble(indices[$L])", fieldName, columnIndex);
             }
         };
     }
@@ -25,16 +25,34 @@ class EnumConversion extends StringConversion {
     }
 
     @Override
-    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final String columnName,
+    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final int columnIndex,
                                                         final TypeMirror type) {
         return new Action1<CodeBlock.Builder>() {
             @Override
             public void call(CodeBlock.Builder builder) {
-                builder.addStatement("object.$L = $T.getEnum(cursor, $S, $T.class)", fieldName,
-                        ClassName.get("droidkit.util", "Cursors"), columnName,
-                        ClassName.bestGuess(type.toString()));
+                builder.addStatement("object.$L = $T.valueOf(cursor.getString(indices[$L]))", fieldName,
+                        ClassName.bestGuess(type.toString()), columnIndex);
             }
         };
     }
 
+    @Override
+    public Action1<CodeBlock.Builder> bindToStatement(final String value, final String bindIndex) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.beginControlFlow("if ($L == null)", value)
+                        .addStatement("stmt.bindNull($L)", bindIndex)
+                        .nextControlFlow("else")
+                        .addStatement("stmt.bindString($L, $L.name())", bindIndex, value)
+                        .endControlFlow();
+            }
+        };
+    }
+
+    @Override
+    public String bindArgument(String value) {
+        return value + " == null ? null : " + value + ".name()";
+    }
+
 }
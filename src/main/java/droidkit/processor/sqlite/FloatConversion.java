@@ -1,6 +1,5 @@
 package droidkit.processor.sqlite;
 
-import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import droidkit.processor.ProcessingEnv;
 import rx.functions.Action1;
@@ -25,15 +24,29 @@ class FloatConversion implements TypeConversion {
     }
 
     @Override
-    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final String columnName,
+    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final int columnIndex,
                                                         TypeMirror type) {
         return new Action1<CodeBlock.Builder>() {
             @Override
             public void call(CodeBlock.Builder builder) {
-                builder.addStatement("object.$L = $T.getFloat(cursor, $S)", fieldName,
-                        ClassName.get("droidkit.util", "Cursors"), columnName);
+                builder.addStatement("object.$L = cursor.getFloat(indices[$L])", fieldName, columnIndex);
             }
         };
     }
 
+    @Override
+    public Action1<CodeBlock.Builder> bindToStatement(final String value, final String bindIndex) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.addStatement("stmt.bindDouble($L, $L)", bindIndex, value);
+            }
+        };
+    }
+
+    @Override
+    public String bindArgument(String value) {
+        return value;
+    }
+
 }
@@ -0,0 +1,142 @@
+package droidkit.processor.sqlite;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import droidkit.processor.ProcessingEnv;
+import rx.functions.Action1;
+
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author Daniel Serdyukov
+ */
+class IntEnumConversion implements TypeConversion {
+
+    private final ClassName mEnumType;
+
+    private final List<String> mConstants;
+
+    private final List<Integer> mCodes;
+
+    private final String mByCodeName;
+
+    private final String mCodesName;
+
+    IntEnumConversion(ClassName enumType, String columnName, List<String> constants, List<Integer> codes) {
+        mEnumType = enumType;
+        mConstants = constants;
+        mCodes = codes;
+        mByCodeName = columnName.toUpperCase(Locale.US) + "_BY_CODE";
+        mCodesName = columnName.toUpperCase(Locale.US) + "_CODES";
+    }
+
+    ClassName getEnumType() {
+        return mEnumType;
+    }
+
+    IntEnumConversion withLookupPrefix(String prefix) {
+        return new IntEnumConversion(mEnumType, prefix, mConstants, mCodes);
+    }
+
+    @Override
+    public boolean isAcceptable(ProcessingEnv processingEnv, VariableElement field) {
+        return processingEnv.isTypeOfKind(ElementKind.ENUM, field.asType());
+    }
+
+    @Override
+    public String sqliteType() {
+        return " INTEGER NOT NULL";
+    }
+
+    @Override
+    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final int columnIndex,
+                                                        TypeMirror type) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.addStatement("object.$L = $L[cursor.getInt(indices[$L])]", fieldName, mByCodeName,
+                        columnIndex);
+            }
+        };
+    }
+
+    @Override
+    public Action1<CodeBlock.Builder> bindToStatement(final String value, final String bindIndex) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.beginControlFlow("if ($L == null)", value)
+                        .addStatement("stmt.bindNull($L)", bindIndex)
+                        .nextControlFlow("else")
+                        .addStatement("stmt.bindLong($L, $L)", bindIndex, code(value))
+                        .endControlFlow();
+            }
+        };
+    }
+
+    @Override
+    public String bindArgument(String value) {
+        return value + " == null ? null : " + code(value);
+    }
+
+    List<FieldSpec> lookupFields() {
+        final List<FieldSpec> fields = new ArrayList<>();
+        if (mCodes == null) {
+            fields.add(FieldSpec.builder(ArrayTypeName.of(mEnumType), mByCodeName,
+                    Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$T.values()", mEnumType)
+                    .build());
+            return fields;
+        }
+        int maxCode = 0;
+        for (final int code : mCodes) {
+            maxCode = Math.max(maxCode, code);
+        }
+        final String[] byCode = new String[maxCode + 1];
+        for (int i = 0; i < mConstants.size(); ++i) {
+            byCode[mCodes.get(i)] = mConstants.get(i);
+        }
+        final CodeBlock.Builder byCodeInit = CodeBlock.builder().add("{");
+        for (int i = 0; i < byCode.length; ++i) {
+            byCodeInit.add(i > 0 ? ", " : "");
+            if (byCode[i] == null) {
+                byCodeInit.add("null");
+            } else {
+                byCodeInit.add("$T.$L", mEnumType, byCode[i]);
+            }
+        }
+        final CodeBlock.Builder codesInit = CodeBlock.builder().add("{");
+        for (int i = 0; i < mCodes.size(); ++i) {
+            codesInit.add(i > 0 ? ", $L" : "$L", mCodes.get(i));
+        }
+        fields.add(FieldSpec.builder(ArrayTypeName.of(mEnumType), mByCodeName,
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(byCodeInit.add("}").build())
+                .build());
+        fields.add(FieldSpec.builder(int[].class, mCodesName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(codesInit.add("}").build())
+                .build());
+        return fields;
+    }
+
+    List<FieldSpec> bindFields() {
+        final List<FieldSpec> fields = lookupFields();
+        return fields.subList(1, fields.size());
+    }
+
+    private String code(String value) {
+        if (mCodes == null) {
+            return value + ".ordinal()";
+        }
+        return mCodesName + "[" + value + ".ordinal()]";
+    }
+
+}
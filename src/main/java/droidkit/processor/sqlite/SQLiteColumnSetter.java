@@ -6,7 +6,6 @@ import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.TreeMaker;
 import com.sun.tools.javac.tree.TreeTranslator;
 import com.sun.tools.javac.util.Names;
-import droidkit.processor.JCLiterals;
 import rx.functions.Func0;
 
 import java.util.Arrays;
@@ -27,19 +26,22 @@ class SQLiteColumnSetter extends TreeTranslator {
 
     private final String mFieldName;
 
-    private final String mColumnName;
+    private final String mColumnStatement;
 
     private final Func0<String> mPrimaryKey;
 
+    private final boolean mDirtyTracking;
+
     public SQLiteColumnSetter(JavacProcessingEnvironment env, ClassName className, String fieldName,
-                              String columnName, Func0<String> primaryKey) {
+                              String columnName, Func0<String> primaryKey, boolean dirtyTracking) {
         mTreeMaker = TreeMaker.instance(env.getContext());
         mNames = Names.instance(env.getContext());
         mPackageName = className.packageName();
         mClassName = className.simpleName();
         mFieldName = fieldName;
-        mColumnName = columnName;
+        mColumnStatement = SQLiteObjectScanner.columnStatement(columnName);
         mPrimaryKey = primaryKey;
+        mDirtyTracking = dirtyTracking;
     }
 
     @Override
@@ -50,20 +52,33 @@ class SQLiteColumnSetter extends TreeTranslator {
                         mTreeMaker.Block(0, methodDecl.body.stats),
                         com.sun.tools.javac.util.List.<JCTree.JCCatch>nil(),
                         mTreeMaker.Block(0, com.sun.tools.javac.util.List.<JCTree.JCStatement>of(
-                                mTreeMaker.Exec(mTreeMaker.Apply(
-                                        com.sun.tools.javac.util.List.<JCTree.JCExpression>nil(),
-                                        ident(mPackageName, mClassName, "update"),
-                                        com.sun.tools.javac.util.List.of(
-                                                JCLiterals.stringValue(mTreeMaker, mColumnName),
-                                                thisIdent(mFieldName), thisIdent(mPrimaryKey.call())
-                                        )
-                                ))
+                                mTreeMaker.Exec(mDirtyTracking ? markDirty() : update())
                         ))
                 )
         );
         this.result = methodDecl;
     }
 
+    private JCTree.JCMethodInvocation update() {
+        return mTreeMaker.Apply(
+                com.sun.tools.javac.util.List.<JCTree.JCExpression>nil(),
+                ident(mPackageName, mClassName, SQLiteObjectScanner.columnUpdater(mFieldName)),
+                com.sun.tools.javac.util.List.of(thisIdent(mFieldName), thisIdent(mPrimaryKey.call())
+                )
+        );
+    }
+
+    private JCTree.JCMethodInvocation markDirty() {
+        return mTreeMaker.Apply(
+                com.sun.tools.javac.util.List.<JCTree.JCExpression>nil(),
+                ident(mPackageName, mClassName, "markDirty"),
+                com.sun.tools.javac.util.List.of(
+                        mTreeMaker.Ident(mNames._this),
+                        ident(mPackageName, mClassName, mColumnStatement)
+                )
+        );
+    }
+
     private JCTree.JCExpression ident(String... selectors) {
         final Iterator<String> iterator = Arrays.asList(selectors).iterator();
         JCTree.JCExpression selector = mTreeMaker.Ident(mNames.fromString(iterator.next()));
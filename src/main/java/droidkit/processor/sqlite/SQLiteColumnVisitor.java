@@ -2,21 +2,30 @@ package droidkit.processor.sqlite;
 
 import com.squareup.javapoet.ClassName;
 import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteEnumCode;
 import droidkit.processor.ProcessingEnv;
 import droidkit.processor.Strings;
 import rx.functions.Action1;
 import rx.functions.Func0;
 
-import javax.lang.model.element.ExecutableElement;
-import javax.lang.model.element.VariableElement;
+import javax.lang.model.element.*;
 import javax.tools.Diagnostic;
 import java.lang.annotation.Annotation;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 /**
  * @author Daniel Serdyukov
  */
 class SQLiteColumnVisitor implements FieldVisitor {
 
+    private static final int MAX_ENUM_CODE = 1023;
+
+    private static final int MAX_DECIMAL_SCALE = 18;
+
     static String canonicalSetterName(String fieldName, String setterName) {
         if (setterName.isEmpty()) {
             if ('m' == fieldName.charAt(0) && Character.isUpperCase(fieldName.charAt(1))) {
@@ -41,21 +50,30 @@ class SQLiteColumnVisitor implements FieldVisitor {
         final String tableName = scanner.getTableName();
         final String fieldName = field.getSimpleName().toString();
         final String columnName = getColumnName(fieldName, column.value());
-        final TypeConversion conversion = getTypeConversion(env, field);
+        final TypeConversion conversion;
+        if (column.enumAsInteger()) {
+            conversion = getIntEnumConversion(scanner, env, field, columnName);
+        } else if (column.scale() >= 0) {
+            conversion = getScaledDecimalConversion(env, field, column.scale());
+        } else {
+            conversion = getTypeConversion(env, field);
+        }
         scanner.addColumnDef(columnName + conversion.sqliteType());
-        scanner.putFieldToColumn(fieldName, columnName);
+        scanner.putFieldToColumn(fieldName, columnName, field.asType(), conversion);
         scanner.setterAction(canonicalSetterName(fieldName, column.setter()), new Action1<ExecutableElement>() {
             @Override
             public void call(ExecutableElement method) {
                 env.getTree(method).accept(new SQLiteColumnSetter(
                         env.getJavacEnv(),
                         ClassName.get(scanner.getPackageName(), scanner.getClassName()),
-                        fieldName, columnName, scanner.getPrimaryKey()
+                        fieldName, columnName, scanner.getPrimaryKey(), scanner.isDirtyTracking()
                 ));
             }
         });
-        scanner.instantiateAction(conversion.convertToJavaType(fieldName, columnName, field.asType()));
+        final int columnIndex = scanner.columnIndex(columnName);
+        scanner.instantiateAction(columnIndex, conversion.convertToJavaType(fieldName, columnIndex, field.asType()));
         if (column.index()) {
+            scanner.finder(columnName);
             scanner.index(new Func0<String>() {
                 @Override
                 public String call() {
@@ -76,6 +94,46 @@ class SQLiteColumnVisitor implements FieldVisitor {
         throw new IllegalArgumentException("Unsupported java -> sqlite type conversion");
     }
 
+    private TypeConversion getIntEnumConversion(SQLiteObjectScanner scanner, ProcessingEnv processingEnv,
+                                                VariableElement field, String columnName) {
+        if (!processingEnv.isTypeOfKind(ElementKind.ENUM, field.asType())) {
+            processingEnv.printMessage(Diagnostic.Kind.ERROR, field, "enumAsInteger expects enum field");
+            throw new IllegalArgumentException("enumAsInteger expects enum field");
+        }
+        final TypeElement enumType = (TypeElement) processingEnv.asElement(field.asType());
+        final List<String> constants = new ArrayList<>();
+        final List<Integer> codes = new ArrayList<>();
+        for (final Element element : enumType.getEnclosedElements()) {
+            if (ElementKind.ENUM_CONSTANT == element.getKind()) {
+                constants.add(element.getSimpleName().toString());
+                final SQLiteEnumCode code = element.getAnnotation(SQLiteEnumCode.class);
+                if (code != null) {
+                    codes.add(code.value());
+                }
+            }
+        }
+        if (!codes.isEmpty() && (codes.size() != constants.size() || new HashSet<>(codes).size() != codes.size()
+                || Collections.min(codes) < 0 || Collections.max(codes) > MAX_ENUM_CODE)) {
+            processingEnv.printMessage(Diagnostic.Kind.ERROR, field, "Each constant of %s needs a distinct " +
+                    "@SQLiteEnumCode in range 0..%d", enumType.getSimpleName(), MAX_ENUM_CODE);
+            throw new IllegalArgumentException("Invalid enum codes");
+        }
+        final IntEnumConversion conversion = new IntEnumConversion(ClassName.get(enumType), columnName, constants,
+                codes.isEmpty() ? null : codes);
+        scanner.staticFields(conversion.lookupFields());
+        return conversion;
+    }
+
+    private TypeConversion getScaledDecimalConversion(ProcessingEnv processingEnv, VariableElement field,
+                                                      int scale) {
+        if (!processingEnv.isSubtype(field.asType(), BigDecimal.class) || scale > MAX_DECIMAL_SCALE) {
+            processingEnv.printMessage(Diagnostic.Kind.ERROR, field, "scale expects BigDecimal field and " +
+                    "value in range 0..%d", MAX_DECIMAL_SCALE);
+            throw new IllegalArgumentException("Invalid scaled decimal");
+        }
+        return new ScaledDecimalConversion(scale);
+    }
+
     private String getColumnName(String fieldName, String columnName) {
         if (columnName.isEmpty()) {
             if ('m' == fieldName.charAt(0)
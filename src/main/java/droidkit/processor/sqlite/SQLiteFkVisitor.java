@@ -134,7 +134,7 @@ class SQLiteFkVisitor implements FieldVisitor {
         public void call(final String relTableName) {
             final String tableName = mScanner.getTableName();
             final String columnName = relTableName + "_id";
-            mScanner.putFieldToColumn(mFieldName, columnName);
+            mScanner.putFieldToColumn(mFieldName, columnName, mFieldType, new LongConversion());
             mScanner.setterAction(SQLiteColumnVisitor.canonicalSetterName(mFieldName, mSetterName),
                     new Action1<ExecutableElement>() {
                         @Override
@@ -142,11 +142,13 @@ class SQLiteFkVisitor implements FieldVisitor {
                             mEnv.getTree(method).accept(new SQLiteColumnSetter(
                                     mEnv.getJavacEnv(),
                                     ClassName.get(mScanner.getPackageName(), mScanner.getClassName()),
-                                    mFieldName, columnName, mScanner.getPrimaryKey()
+                                    mFieldName, columnName, mScanner.getPrimaryKey(), mScanner.isDirtyTracking()
                             ));
                         }
                     });
-            mScanner.instantiateAction(new LongConversion().convertToJavaType(mFieldName, columnName, mFieldType));
+            final int columnIndex = mScanner.columnIndex(columnName);
+            mScanner.instantiateAction(columnIndex, new LongConversion().convertToJavaType(mFieldName, columnIndex,
+                    mFieldType));
             if (mStrict) {
                 mScanner.addColumnDef(columnName + " INTEGER REFERENCES " + relTableName +
                         "(_id) ON DELETE CASCADE ON UPDATE CASCADE");
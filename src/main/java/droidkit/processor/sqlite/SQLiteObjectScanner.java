@@ -3,6 +3,8 @@ package droidkit.processor.sqlite;
 import com.squareup.javapoet.*;
 import com.sun.tools.javac.code.Flags;
 import com.sun.tools.javac.tree.JCTree;
+import droidkit.annotation.SQLiteFk;
+import droidkit.annotation.SQLiteIndex;
 import droidkit.annotation.SQLiteObject;
 import droidkit.processor.ElementScanner;
 import droidkit.processor.ProcessingEnv;
@@ -12,24 +14,52 @@ import rx.functions.Func0;
 import rx.functions.Func1;
 
 import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.ElementScanner7;
+import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @author Daniel Serdyukov
  */
 public class SQLiteObjectScanner extends ElementScanner {
 
-    private static final CodeBlock.Builder META_BLOCK = CodeBlock.builder();
+    private static CodeBlock.Builder sMetaBlock = CodeBlock.builder();
+
+    private static CodeBlock.Builder sReleaseBlock = CodeBlock.builder();
+
+    public static final String OPTION_SCHEMA_DIR = "droidkit.schemaDir";
+
+    public static final String OPTION_SCHEMA_VERSION = "droidkit.schemaVersion";
+
+    public static final String OPTION_SCHEMA_DROP_TABLES = "droidkit.schemaDropTables";
+
+    private static final Pattern SCHEMA_FILE = Pattern.compile("schema-(\\d+)\\.txt");
+
+    private static final Map<String, SQLiteObjectScanner> TABLES = new HashMap<>();
+
+    private static final Map<String, SQLiteObjectScanner> MODELS = new HashMap<>();
+
+    private static final int STMT_DELETE = 3;
+
+    private static final int MAX_PARTIAL_UPDATES = 16;
+
+    static final int IN_CHUNK_SIZE = 500;
 
     private final List<String> mColumnsDef = new ArrayList<>();
 
@@ -43,6 +73,12 @@ public class SQLiteObjectScanner extends ElementScanner {
 
     private final Map<String, String> mFieldToColumn = new LinkedHashMap<>();
 
+    private final Map<String, TypeMirror> mFieldToType = new HashMap<>();
+
+    private final Map<String, TypeConversion> mFieldToConversion = new HashMap<>();
+
+    private final List<String> mColumns = new ArrayList<>();
+
     private final List<Action1<CodeBlock.Builder>> mInstantiateActions = new ArrayList<>();
 
     private final List<Action1<CodeBlock.Builder>> mSaveActions = new ArrayList<>();
@@ -51,32 +87,503 @@ public class SQLiteObjectScanner extends ElementScanner {
 
     private final Set<TypeMirror> mOneToOneRelations = new HashSet<>();
 
+    private final List<RelationField> mJoinedRelations = new ArrayList<>();
+
+    private final List<RelationField> mListRelations = new ArrayList<>();
+
+    private final List<TypeSpec> mNestedTypes = new ArrayList<>();
+
+    private final List<FieldSpec> mStaticFields = new ArrayList<>();
+
+    private final List<Finder> mFinders = new ArrayList<>();
+
+    private final Map<String, String> mRelationStatements = new LinkedHashMap<>();
+
     private final String mTableName;
 
     private final boolean mActiveRecord;
 
+    private final boolean mDirtyTracking;
+
+    private final int mIdentityMapSize;
+
     private String mUniqueConstraint;
 
+    private final SQLiteIndex[] mIndexDecls;
+
+    private final List<String> mKeyColumns;
+
+    private final boolean mWithoutRowId;
+
+    private final boolean mModelOnly;
+
     private Func0<String> mPrimaryKey;
 
     public SQLiteObjectScanner(ProcessingEnv env, TypeElement originType) {
+        this(env, originType, false);
+    }
+
+    private SQLiteObjectScanner(ProcessingEnv env, TypeElement originType, boolean modelOnly) {
         super(env, originType);
+        mModelOnly = modelOnly;
         final SQLiteObject annotation = originType.getAnnotation(SQLiteObject.class);
         mTableName = annotation.value();
-        mActiveRecord = annotation.activeRecord();
+        mKeyColumns = Arrays.asList(annotation.primaryKey());
+        mWithoutRowId = annotation.withoutRowId();
+        mActiveRecord = annotation.activeRecord() && mKeyColumns.isEmpty();
+        mDirtyTracking = annotation.dirtyTracking();
+        mIdentityMapSize = annotation.identityMapSize();
+        mIndexDecls = annotation.indices();
         final String[] uniqueOn = annotation.uniqueOn();
         if (uniqueOn.length > 0) {
+            addFinder(new Finder(Arrays.asList(uniqueOn), true));
             mUniqueConstraint = "UNIQUE(" + Strings.join(", ", Arrays.asList(uniqueOn)) + ")" +
                     ConflictResolution.get(annotation.uniqueConflictClause());
         }
     }
 
+    public static void reset() {
+        sMetaBlock = CodeBlock.builder();
+        sReleaseBlock = CodeBlock.builder();
+        TABLES.clear();
+        MODELS.clear();
+    }
+
     public static void brewMetaClass(ProcessingEnv env) {
-        final TypeSpec typeSpec = TypeSpec.classBuilder("SQLiteMetaData")
+        final ClassName statementCache = ClassName.get("droidkit.sqlite", "SQLiteMetaData", "StatementCache");
+        final TypeName cacheSet = ParameterizedTypeName.get(ClassName.get(Set.class), statementCache);
+        brewSharedClass(env, TypeSpec.classBuilder("SQLiteMetaData")
                 .addAnnotation(ClassName.get("android.support.annotation", "Keep"))
                 .addModifiers(Modifier.PUBLIC)
-                .addStaticBlock(META_BLOCK.build())
+                .addField(FieldSpec.builder(cacheSet, "STATEMENT_CACHES", Modifier.PRIVATE, Modifier.STATIC,
+                        Modifier.FINAL)
+                        .initializer("$T.newSetFromMap(new $T<$T, $T>())", ClassName.get(Collections.class),
+                                ClassName.get(WeakHashMap.class), statementCache, ClassName.get(Boolean.class))
+                        .build())
+                .addStaticBlock(sMetaBlock.build())
+                .addType(TypeSpec.interfaceBuilder("StatementCache")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addMethod(MethodSpec.methodBuilder("releaseStatements")
+                                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                                .build())
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("attachStatementCache")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addParameter(statementCache, "cache")
+                        .beginControlFlow("synchronized (STATEMENT_CACHES)")
+                        .addStatement("STATEMENT_CACHES.add(cache)")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("releaseStatements")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addCode(sReleaseBlock.build())
+                        .addStatement("final $T caches", ParameterizedTypeName.get(ClassName.get(List.class),
+                                statementCache))
+                        .beginControlFlow("synchronized (STATEMENT_CACHES)")
+                        .addStatement("caches = new $T<>(STATEMENT_CACHES)", ClassName.get(ArrayList.class))
+                        .endControlFlow()
+                        .beginControlFlow("for (final $T cache : caches)", statementCache)
+                        .addStatement("cache.releaseStatements()")
+                        .endControlFlow()
+                        .addStatement("$T.clear()", ClassName.get("droidkit.sqlite", "SQLiteQueryCache"))
+                        .build())
+                .build());
+        brewSharedClass(env, changesClass());
+        brewSharedClass(env, queryCacheClass());
+        brewSharedClass(env, migrationsClass(env));
+    }
+
+    private static TypeSpec migrationsClass(ProcessingEnv env) {
+        final String schemaDir = env.getOption(OPTION_SCHEMA_DIR);
+        final String schemaVersion = env.getOption(OPTION_SCHEMA_VERSION);
+        final Map<Integer, List<String>> migrations = new TreeMap<>();
+        int version = 0;
+        if (schemaDir != null && schemaVersion != null) {
+            try {
+                version = Integer.parseInt(schemaVersion.trim());
+                migrations.putAll(migrations(env, new File(schemaDir), version));
+            } catch (NumberFormatException | IOException e) {
+                env.printMessage(Diagnostic.Kind.ERROR, "Can't generate schema migrations: %s", e.getMessage());
+            }
+        }
+        final CodeBlock.Builder cases = CodeBlock.builder()
+                .beginControlFlow("switch (version)");
+        final TypeSpec.Builder builder = TypeSpec.classBuilder("SQLiteMigrations")
+                .addAnnotation(ClassName.get("android.support.annotation", "Keep"))
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(TypeName.INT, "VERSION", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", version)
+                        .build());
+        for (final Map.Entry<Integer, List<String>> migration : migrations.entrySet()) {
+            builder.addField(FieldSpec.builder(String[].class, "MIGRATION_" + migration.getKey(),
+                    Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer(stringArray(migration.getValue()))
+                    .build());
+            cases.add("case $L:\n", migration.getKey())
+                    .indent()
+                    .addStatement("return MIGRATION_$L", migration.getKey())
+                    .unindent();
+        }
+        cases.add("default:\n")
+                .indent()
+                .addStatement("return null")
+                .unindent()
+                .endControlFlow();
+        return builder.addMethod(MethodSpec.methodBuilder("statements")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(TypeName.INT, "version")
+                .returns(String[].class)
+                .addCode(cases.build())
+                .build())
+                .addMethod(MethodSpec.methodBuilder("migrate")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addParameter(ClassName.get("droidkit.sqlite", "SQLiteDb"), "db")
+                        .addParameter(TypeName.INT, "oldVersion")
+                        .addParameter(TypeName.INT, "newVersion")
+                        .returns(TypeName.BOOLEAN)
+                        .beginControlFlow("for (int version = oldVersion + 1; version <= newVersion; ++version)")
+                        .beginControlFlow("if (statements(version) == null)")
+                        .addStatement("return false")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("db.beginTransaction()")
+                        .beginControlFlow("try")
+                        .beginControlFlow("for (int version = oldVersion + 1; version <= newVersion; ++version)")
+                        .beginControlFlow("for (final String sql : statements(version))")
+                        .addStatement("db.execSQL(sql)")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("db.setTransactionSuccessful()")
+                        .nextControlFlow("finally")
+                        .addStatement("db.endTransaction()")
+                        .endControlFlow()
+                        .addStatement("return true")
+                        .build())
+                .build();
+    }
+
+    private static Map<Integer, List<String>> migrations(ProcessingEnv env, File schemaDir, int version)
+            throws IOException {
+        if (!schemaDir.isDirectory() && !schemaDir.mkdirs()) {
+            throw new IOException("Can't create " + schemaDir);
+        }
+        final File snapshotFile = new File(schemaDir, "schema-" + version + ".txt");
+        final SQLiteSchemaSnapshot latest = SQLiteSchemaSnapshot.of(TABLES.values());
+        if (snapshotFile.isFile()) {
+            final Set<String> kept = latest.keepMissingTables(SQLiteSchemaSnapshot.read(snapshotFile));
+            if (!kept.isEmpty()) {
+                env.printMessage(Diagnostic.Kind.WARNING, "%s keeps tables %s missing from this build, " +
+                        "delete it to drop them", snapshotFile.getName(), Strings.join(", ", kept));
+            }
+        }
+        latest.write(snapshotFile);
+        final Map<Integer, File> snapshots = new TreeMap<>();
+        final File[] files = schemaDir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final Matcher matcher = SCHEMA_FILE.matcher(file.getName());
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) <= version) {
+                    snapshots.put(Integer.parseInt(matcher.group(1)), file);
+                }
+            }
+        }
+        final Map<Integer, List<String>> migrations = new TreeMap<>();
+        SQLiteSchemaSnapshot previous = null;
+        int previousVersion = 0;
+        for (final Map.Entry<Integer, File> snapshot : snapshots.entrySet()) {
+            final SQLiteSchemaSnapshot current = SQLiteSchemaSnapshot.read(snapshot.getValue());
+            if (previous != null && previousVersion + 1 == snapshot.getKey()) {
+                final List<String> statements = current.migrateFrom(previous,
+                        Boolean.parseBoolean(env.getOption(OPTION_SCHEMA_DROP_TABLES)));
+                if (statements == null) {
+                    env.printMessage(Diagnostic.Kind.WARNING, "Schema %d can't be migrated in place, " +
+                            "tables will be recreated", snapshot.getKey());
+                } else {
+                    migrations.put(snapshot.getKey(), statements);
+                }
+            }
+            previous = current;
+            previousVersion = snapshot.getKey();
+        }
+        return migrations;
+    }
+
+    private static TypeSpec changesClass() {
+        final ClassName batch = ClassName.get("droidkit.sqlite", "SQLiteChanges", "Batch");
+        final TypeName classType = ParameterizedTypeName.get(ClassName.get(Class.class),
+                WildcardTypeName.subtypeOf(Object.class));
+        final ClassName client = ClassName.get("droidkit.sqlite", "SQLiteClient");
+        return TypeSpec.classBuilder("SQLiteChanges")
+                .addJavadoc("Change notifications of generated helpers, deferred until the outermost batch ends.\n" +
+                        "<p>\nWrap your own transactions around generated helper calls with\n" +
+                        "{@link #beginTransaction(SQLiteClient)}, {@link #setTransactionSuccessful(SQLiteClient)} " +
+                        "and\n{@link #endTransaction(SQLiteClient)} so that nothing is dispatched before the " +
+                        "outermost commit.\n")
+                .addAnnotation(ClassName.get("android.support.annotation", "Keep"))
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), batch),
+                        "BATCH", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T<>()", ClassName.get(ThreadLocal.class))
+                        .build())
+                .addType(TypeSpec.classBuilder("Batch")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(Set.class), classType),
+                                "mChanges", Modifier.FINAL)
+                                .initializer("new $T<>()", ClassName.get(LinkedHashSet.class))
+                                .build())
+                        .addField(TypeName.INT, "mDepth")
+                        .addField(TypeName.BOOLEAN, "mFailed")
+                        .addField(TypeName.BOOLEAN, "mMarkedSuccessful")
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("beginBatch")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addStatement("$T batch = BATCH.get()", batch)
+                        .beginControlFlow("if (batch == null)")
+                        .addStatement("batch = new $T()", batch)
+                        .addStatement("BATCH.set(batch)")
+                        .endControlFlow()
+                        .addStatement("++batch.mDepth")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("endBatch")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addParameter(TypeName.BOOLEAN, "successful")
+                        .addStatement("final $T batch = BATCH.get()", batch)
+                        .beginControlFlow("if (batch == null)")
+                        .addStatement("throw new $T($S)", IllegalStateException.class, "endBatch without beginBatch")
+                        .endControlFlow()
+                        .addStatement("batch.mFailed |= !successful")
+                        .beginControlFlow("if (--batch.mDepth == 0)")
+                        .addStatement("BATCH.remove()")
+                        .beginControlFlow("for (final $T type : batch.mChanges)", classType)
+                        .addStatement("$T.invalidate(type)", ClassName.get("droidkit.sqlite", "SQLiteQueryCache"))
+                        .beginControlFlow("if (!batch.mFailed)")
+                        .addStatement("$T.notifyChange(type)", ClassName.get("droidkit.sqlite", "SQLiteSchema"))
+                        .endControlFlow()
+                        .endControlFlow()
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("beginTransaction")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addParameter(client, "client")
+                        .addStatement("client.beginTransaction()")
+                        .addStatement("beginBatch()")
+                        .addStatement("BATCH.get().mMarkedSuccessful = false")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("setTransactionSuccessful")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addParameter(client, "client")
+                        .addStatement("client.setTransactionSuccessful()")
+                        .addStatement("final $T batch = BATCH.get()", batch)
+                        .beginControlFlow("if (batch != null)")
+                        .addStatement("batch.mMarkedSuccessful = true")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("endTransaction")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addParameter(client, "client")
+                        .addStatement("final $T batch = BATCH.get()", batch)
+                        .addStatement("final boolean marked = batch != null && batch.mMarkedSuccessful")
+                        .beginControlFlow("if (batch != null)")
+                        .addStatement("batch.mMarkedSuccessful = false")
+                        .endControlFlow()
+                        .addStatement("boolean successful = false")
+                        .beginControlFlow("try")
+                        .addStatement("client.endTransaction()")
+                        .addStatement("successful = marked")
+                        .nextControlFlow("finally")
+                        .addStatement("endBatch(successful)")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("notifyChange")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addParameter(classType, "type")
+                        .addStatement("$T.invalidate(type)", ClassName.get("droidkit.sqlite", "SQLiteQueryCache"))
+                        .addStatement("final $T batch = BATCH.get()", batch)
+                        .beginControlFlow("if (batch == null)")
+                        .addStatement("$T.notifyChange(type)", ClassName.get("droidkit.sqlite", "SQLiteSchema"))
+                        .nextControlFlow("else")
+                        .addStatement("batch.mChanges.add(type)")
+                        .endControlFlow()
+                        .build())
+                .build();
+    }
+
+    private static TypeSpec queryCacheClass() {
+        final ClassName key = ClassName.get("droidkit.sqlite", "SQLiteQueryCache", "Key");
+        final ClassName entry = ClassName.get("droidkit.sqlite", "SQLiteQueryCache", "Entry");
+        final TypeName classType = ParameterizedTypeName.get(ClassName.get(Class.class),
+                WildcardTypeName.subtypeOf(Object.class));
+        final TypeName anyList = ParameterizedTypeName.get(ClassName.get(List.class),
+                WildcardTypeName.subtypeOf(Object.class));
+        final TypeVariableName t = TypeVariableName.get("T");
+        final TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), t);
+        final ClassName client = ClassName.get("droidkit.sqlite", "SQLiteClient");
+        return TypeSpec.classBuilder("SQLiteQueryCache")
+                .addJavadoc("Result cache for generated helper queries, disabled until {@link #setMaxSize(int)}.\n" +
+                        "<p>\nCached objects are shared by every caller that hits the same entry, treat them as " +
+                        "read-only.\nEntries are evicted by the writes of generated helpers; writes made through " +
+                        "other\nAPIs must call {@link #invalidate(Class)} for the changed type.\n")
+                .addAnnotation(ClassName.get("android.support.annotation", "Keep"))
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(LinkedHashMap.class), key, entry),
+                        "ENTRIES", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T<>(16, 0.75f, true)", ClassName.get(LinkedHashMap.class))
+                        .build())
+                .addField(TypeName.INT, "sMaxSize", Modifier.PRIVATE, Modifier.STATIC)
+                .addField(TypeName.LONG, "sGeneration", Modifier.PRIVATE, Modifier.STATIC)
+                .addField(TypeName.LONG, "sHitCount", Modifier.PRIVATE, Modifier.STATIC)
+                .addField(TypeName.LONG, "sMissCount", Modifier.PRIVATE, Modifier.STATIC)
+                .addType(TypeSpec.classBuilder("Key")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .addField(client, "mClient", Modifier.FINAL)
+                        .addField(classType, "mType", Modifier.FINAL)
+                        .addField(String.class, "mSelection", Modifier.FINAL)
+                        .addField(Object[].class, "mBindArgs", Modifier.FINAL)
+                        .addMethod(MethodSpec.constructorBuilder()
+                                .addParameter(client, "client")
+                                .addParameter(classType, "type")
+                                .addParameter(String.class, "selection")
+                                .addParameter(Object[].class, "bindArgs")
+                                .addStatement("mClient = client")
+                                .addStatement("mType = type")
+                                .addStatement("mSelection = selection")
+                                .addStatement("mBindArgs = bindArgs")
+                                .build())
+                        .addMethod(MethodSpec.methodBuilder("equals")
+                                .addAnnotation(Override.class)
+                                .addModifiers(Modifier.PUBLIC)
+                                .addParameter(Object.class, "o")
+                                .returns(TypeName.BOOLEAN)
+                                .beginControlFlow("if (!(o instanceof $T))", key)
+                                .addStatement("return false")
+                                .endControlFlow()
+                                .addStatement("final $1T other = ($1T) o", key)
+                                .addStatement("return mClient == other.mClient && mType == other.mType " +
+                                        "&& (mSelection == null ? other.mSelection == null " +
+                                        ": mSelection.equals(other.mSelection)) " +
+                                        "&& $T.equals(mBindArgs, other.mBindArgs)", ClassName.get(Arrays.class))
+                                .build())
+                        .addMethod(MethodSpec.methodBuilder("hashCode")
+                                .addAnnotation(Override.class)
+                                .addModifiers(Modifier.PUBLIC)
+                                .returns(TypeName.INT)
+                                .addStatement("int result = $T.identityHashCode(mClient)", ClassName.get(System.class))
+                                .addStatement("result = 31 * result + mType.hashCode()")
+                                .addStatement("result = 31 * result + (mSelection == null ? 0 : mSelection.hashCode())")
+                                .addStatement("return 31 * result + $T.hashCode(mBindArgs)",
+                                        ClassName.get(Arrays.class))
+                                .build())
+                        .build())
+                .addType(TypeSpec.classBuilder("Entry")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .addField(anyList, "mObjects", Modifier.FINAL)
+                        .addField(ArrayTypeName.of(classType), "mTags", Modifier.FINAL)
+                        .addMethod(MethodSpec.constructorBuilder()
+                                .addParameter(anyList, "objects")
+                                .addParameter(ArrayTypeName.of(classType), "tags")
+                                .addStatement("mObjects = objects")
+                                .addStatement("mTags = tags")
+                                .build())
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("setMaxSize")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.SYNCHRONIZED)
+                        .addParameter(TypeName.INT, "maxSize")
+                        .addStatement("sMaxSize = maxSize")
+                        .addStatement("trimToSize()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("getHitCount")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.SYNCHRONIZED)
+                        .returns(TypeName.LONG)
+                        .addStatement("return sHitCount")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("getMissCount")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.SYNCHRONIZED)
+                        .returns(TypeName.LONG)
+                        .addStatement("return sMissCount")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("generation")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.SYNCHRONIZED)
+                        .returns(TypeName.LONG)
+                        .addStatement("return sGeneration")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("get")
+                        .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                                .addMember("value", "$S", "unchecked")
+                                .build())
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.SYNCHRONIZED)
+                        .addTypeVariable(t)
+                        .addParameter(client, "client")
+                        .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), t), "type")
+                        .addParameter(String.class, "selection")
+                        .addParameter(Object[].class, "bindArgs")
+                        .returns(listType)
+                        .beginControlFlow("if (sMaxSize <= 0)")
+                        .addStatement("return null")
+                        .endControlFlow()
+                        .addStatement("final $T entry = ENTRIES.get(new $T(client, type, selection, bindArgs))",
+                                entry, key)
+                        .beginControlFlow("if (entry == null)")
+                        .addStatement("++sMissCount")
+                        .addStatement("return null")
+                        .endControlFlow()
+                        .addStatement("++sHitCount")
+                        .addStatement("return new $T<>(($T) entry.mObjects)", ClassName.get(ArrayList.class), listType)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("put")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.SYNCHRONIZED)
+                        .addTypeVariable(t)
+                        .addParameter(client, "client")
+                        .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), t), "type")
+                        .addParameter(String.class, "selection")
+                        .addParameter(Object[].class, "bindArgs")
+                        .addParameter(listType, "objects")
+                        .addParameter(ArrayTypeName.of(classType), "tags")
+                        .addParameter(TypeName.LONG, "generation")
+                        .beginControlFlow("if (sMaxSize > 0 && generation == sGeneration)")
+                        .addStatement("ENTRIES.put(new $T(client, type, selection, bindArgs == null ? null : " +
+                                "bindArgs.clone()), new $T(new $T<>(objects), tags))", key, entry,
+                                ClassName.get(ArrayList.class))
+                        .addStatement("trimToSize()")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("invalidate")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.SYNCHRONIZED)
+                        .addParameter(classType, "type")
+                        .addStatement("++sGeneration")
+                        .beginControlFlow("for (final $T<$T> iterator = ENTRIES.values().iterator(); " +
+                                "iterator.hasNext(); )", ClassName.get(Iterator.class), entry)
+                        .beginControlFlow("for (final $T tag : iterator.next().mTags)", classType)
+                        .beginControlFlow("if (tag == type)")
+                        .addStatement("iterator.remove()")
+                        .addStatement("break")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("clear")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.SYNCHRONIZED)
+                        .addStatement("++sGeneration")
+                        .addStatement("ENTRIES.clear()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("trimToSize")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .addStatement("final $T<$T> iterator = ENTRIES.values().iterator()",
+                                ClassName.get(Iterator.class), entry)
+                        .beginControlFlow("while (ENTRIES.size() > sMaxSize && iterator.hasNext())")
+                        .addStatement("iterator.next()")
+                        .addStatement("iterator.remove()")
+                        .endControlFlow()
+                        .build())
                 .build();
+    }
+
+    private static void brewSharedClass(ProcessingEnv env, TypeSpec typeSpec) {
         final JavaFile javaFile = JavaFile.builder("droidkit.sqlite", typeSpec)
                 .addFileComment(AUTO_GENERATED_FILE)
                 .build();
@@ -86,7 +593,7 @@ public class SQLiteObjectScanner extends ElementScanner {
                 javaFile.writeTo(writer);
             }
         } catch (IOException e) {
-            Logger.getGlobal().throwing(SQLiteObjectScanner.class.getName(), "brewMetaClass", e);
+            Logger.getGlobal().throwing(SQLiteObjectScanner.class.getName(), "brewSharedClass", e);
         }
     }
 
@@ -98,9 +605,146 @@ public class SQLiteObjectScanner extends ElementScanner {
         if (!Strings.isNullOrEmpty(mUniqueConstraint)) {
             mColumnsDef.add(mUniqueConstraint);
         }
+        for (final SQLiteIndex index : mIndexDecls) {
+            declareIndex(index);
+        }
+        if (!mKeyColumns.isEmpty() && !declareCompositeKey()) {
+            return;
+        } else if (mWithoutRowId && mKeyColumns.isEmpty()) {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, getOrigin(), "WITHOUT ROWID table requires primaryKey");
+            return;
+        }
+        TABLES.put(mTableName, this);
         brewJava();
     }
 
+    private void declareIndex(SQLiteIndex index) {
+        final List<String> columns = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        for (final String column : index.value()) {
+            final String[] parts = column.trim().split("\\s+");
+            if (!mColumns.contains(parts[0]) || parts.length > 2
+                    || (parts.length == 2 && !parts[1].matches("(?i)ASC|DESC"))) {
+                getEnv().printMessage(Diagnostic.Kind.ERROR, getOrigin(), "Invalid index column: %s", column);
+                return;
+            }
+            columns.add(parts.length == 2 ? parts[0] + " " + parts[1].toUpperCase(Locale.US) : parts[0]);
+            names.add(parts[0]);
+        }
+        if (columns.isEmpty()) {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, getOrigin(), "Index must declare at least one column");
+            return;
+        }
+        final String name = Strings.isNullOrEmpty(index.name())
+                ? "idx_" + mTableName + "_" + Strings.join("_", names)
+                : index.name();
+        final String sql = "CREATE " + (index.unique() ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " + name +
+                " ON " + mTableName + "(" + Strings.join(", ", columns) + ")" +
+                (Strings.isNullOrEmpty(index.where()) ? "" : " WHERE " + index.where());
+        index(new Func0<String>() {
+            @Override
+            public String call() {
+                return sql;
+            }
+        });
+    }
+
+    private boolean declareCompositeKey() {
+        if (mPrimaryKey != null || !mCreateRelations.isEmpty() || mIdentityMapSize > 0) {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, getOrigin(),
+                    "primaryKey can't be combined with @SQLitePk, relations or identity map");
+            return false;
+        }
+        if (isExplicitlyActiveRecord() || mDirtyTracking) {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, getOrigin(),
+                    "primaryKey can't be combined with activeRecord or dirtyTracking, set activeRecord = false");
+            return false;
+        }
+        for (final String column : mKeyColumns) {
+            if (!mFieldToColumn.containsValue(column)) {
+                getEnv().printMessage(Diagnostic.Kind.ERROR, getOrigin(), "Unknown primary key column: %s", column);
+                return false;
+            }
+        }
+        mColumnsDef.add("PRIMARY KEY(" + Strings.join(", ", mKeyColumns) + ")");
+        addFinder(new Finder(mKeyColumns, true));
+        return true;
+    }
+
+    private boolean isExplicitlyActiveRecord() {
+        for (final AnnotationMirror mirror : getOrigin().getAnnotationMirrors()) {
+            if (!SQLiteObject.class.getName().equals(mirror.getAnnotationType().toString())) {
+                continue;
+            }
+            for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("activeRecord")) {
+                    return Boolean.TRUE.equals(entry.getValue().getValue());
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isCompositeKey() {
+        return !mKeyColumns.isEmpty();
+    }
+
+    private String keyPredicate() {
+        if (isCompositeKey()) {
+            return Strings.transformAndJoin(" AND ", mKeyColumns, new ColumnBinder());
+        }
+        return SQLitePkVisitor.ROWID + " = ?";
+    }
+
+    static SQLiteObjectScanner forTable(ProcessingEnv env, String tableName, Collection<TypeElement> candidates) {
+        final SQLiteObjectScanner scanner = TABLES.get(tableName);
+        if (scanner != null) {
+            return scanner;
+        }
+        for (final TypeElement candidate : candidates) {
+            final SQLiteObject annotation = candidate.getAnnotation(SQLiteObject.class);
+            if (annotation != null && tableName.equals(annotation.value())) {
+                return forElement(env, candidate);
+            }
+        }
+        return null;
+    }
+
+    static SQLiteObjectScanner forType(ProcessingEnv env, TypeMirror type) {
+        for (final SQLiteObjectScanner scanner : TABLES.values()) {
+            if (scanner.getOrigin().asType().toString().equals(type.toString())) {
+                return scanner;
+            }
+        }
+        if (TypeKind.DECLARED == type.getKind()) {
+            final TypeElement element = (TypeElement) env.asElement(type);
+            if (element.getAnnotation(SQLiteObject.class) != null) {
+                return forElement(env, element);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Column model of an entity that is not scanned in this round: a later round or a compiled module.
+     * Nothing is generated and the entity sources are left untouched, its own scan reports its errors.
+     */
+    private static SQLiteObjectScanner forElement(ProcessingEnv env, TypeElement element) {
+        final String typeName = element.getQualifiedName().toString();
+        SQLiteObjectScanner model = MODELS.get(typeName);
+        if (model == null) {
+            model = new SQLiteObjectScanner(env, element, true);
+            try {
+                element.accept(model.new FieldScanner(), null);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            MODELS.put(typeName, model);
+        }
+        return model;
+    }
+
     String getPackageName() {
         return getOrigin().getEnclosingElement().toString();
     }
@@ -113,6 +757,63 @@ public class SQLiteObjectScanner extends ElementScanner {
         return mTableName;
     }
 
+    boolean isWithoutRowId() {
+        return mWithoutRowId;
+    }
+
+    List<String> getColumnDefs() {
+        return Collections.unmodifiableList(mColumnsDef);
+    }
+
+    List<String> getIndexSql() {
+        return calls(mIndices);
+    }
+
+    List<String> getTriggerSql() {
+        return calls(mTriggers);
+    }
+
+    List<String> getRelationTableSql() {
+        return calls(mCreateRelations);
+    }
+
+    private static List<String> calls(List<Func0<String>> funcs) {
+        final List<String> values = new ArrayList<>();
+        for (final Func0<String> func : funcs) {
+            values.add(func.call());
+        }
+        return values;
+    }
+
+    ClassName getObjectType() {
+        return ClassName.get(getOrigin());
+    }
+
+    ClassName getHelperType() {
+        return ClassName.get(getPackageName(), getClassName());
+    }
+
+    List<String> getColumns() {
+        return Collections.unmodifiableList(mColumns);
+    }
+
+    TypeConversion getColumnConversion(String columnName) {
+        for (final Map.Entry<String, String> entry : mFieldToColumn.entrySet()) {
+            if (entry.getValue().equalsIgnoreCase(columnName)) {
+                return mFieldToConversion.get(entry.getKey());
+            }
+        }
+        return null;
+    }
+
+    Collection<TypeConversion> getColumnConversions() {
+        return Collections.unmodifiableCollection(mFieldToConversion.values());
+    }
+
+    boolean isDirtyTracking() {
+        return mActiveRecord && mDirtyTracking;
+    }
+
     Func0<String> getPrimaryKey() {
         return mPrimaryKey;
     }
@@ -130,8 +831,27 @@ public class SQLiteObjectScanner extends ElementScanner {
         mColumnsDef.add(def);
     }
 
-    void putFieldToColumn(String fieldName, String columnName) {
+    void putFieldToColumn(String fieldName, String columnName, TypeMirror type, TypeConversion conversion) {
         mFieldToColumn.put(fieldName, columnName);
+        mFieldToType.put(fieldName, type);
+        mFieldToConversion.put(fieldName, conversion);
+    }
+
+    int columnIndex(String columnName) {
+        final int index = mColumns.indexOf(columnName);
+        if (index < 0) {
+            mColumns.add(columnName);
+            return mColumns.size() - 1;
+        }
+        return index;
+    }
+
+    static String columnStatement(String columnName) {
+        return "STMT_UPDATE_" + columnName.toUpperCase(Locale.US);
+    }
+
+    static String columnUpdater(String fieldName) {
+        return "update" + SQLiteColumnVisitor.canonicalSetterName(fieldName, "").substring(3);
     }
 
     void setterAction(String methodName, Action1<ExecutableElement> action) {
@@ -142,6 +862,17 @@ public class SQLiteObjectScanner extends ElementScanner {
         mInstantiateActions.add(action);
     }
 
+    void instantiateAction(final int columnIndex, final Action1<CodeBlock.Builder> action) {
+        mInstantiateActions.add(new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.beginControlFlow("if (indices[$L] >= 0)", columnIndex);
+                action.call(builder);
+                builder.endControlFlow();
+            }
+        });
+    }
+
     void saveAction(Action1<CodeBlock.Builder> action) {
         mSaveActions.add(action);
     }
@@ -162,16 +893,67 @@ public class SQLiteObjectScanner extends ElementScanner {
         mDropRelations.add(index);
     }
 
+    String relationStatement(String name, String sql) {
+        mRelationStatements.put(name, sql);
+        return name;
+    }
+
+    void joinRelation(String fieldName, TypeMirror relType, String relTable, Action1<CodeBlock.Builder> lookup) {
+        mJoinedRelations.add(new RelationField(fieldName, relType, relTable, lookup));
+    }
+
+    void listRelation(String fieldName, TypeMirror relType, String relTable, Action1<CodeBlock.Builder> lookup) {
+        mListRelations.add(new RelationField(fieldName, relType, relTable, lookup));
+    }
+
+    void finder(String columnName) {
+        addFinder(new Finder(Collections.singletonList(columnName), false));
+    }
+
+    private void addFinder(Finder finder) {
+        for (int i = 0; i < mFinders.size(); ++i) {
+            if (mFinders.get(i).mColumns.equals(finder.mColumns)) {
+                if (finder.mUnique) {
+                    mFinders.set(i, finder);
+                }
+                return;
+            }
+        }
+        mFinders.add(finder);
+    }
+
+    void staticFields(List<FieldSpec> fields) {
+        mStaticFields.addAll(fields);
+    }
+
+    void nestedType(TypeSpec typeSpec) {
+        mNestedTypes.add(typeSpec);
+    }
+
     void oneToOneRelation(TypeMirror relType) {
         mOneToOneRelations.add(relType);
     }
 
     //region implementation
     private ClassName brewJava() {
-        final TypeSpec typeSpec = TypeSpec.classBuilder(getClassName())
+        final TypeSpec.Builder builder = TypeSpec.classBuilder(getClassName())
                 .addAnnotation(ClassName.get("android.support.annotation", "Keep"))
                 .addModifiers(Modifier.PUBLIC)
                 .addField(clientRef())
+                .addField(projection())
+                .addField(qualifiedColumns())
+                .addField(projectionIndices())
+                .addField(queryTags())
+                .addFields(finderFields())
+                .addField(columnIndicesRef())
+                .addType(columnIndicesType())
+                .addTypes(mNestedTypes)
+                .addType(rowIteratorType())
+                .addFields(mStaticFields)
+                .addFields(statementIndices())
+                .addField(statements())
+                .addField(statementCache())
+                .addField(statementClientRef())
                 .addMethod(createTable())
                 .addMethod(createIndices())
                 .addMethod(createRelationTables())
@@ -179,14 +961,69 @@ public class SQLiteObjectScanner extends ElementScanner {
                 .addMethod(dropTable())
                 .addMethod(dropRelationTables())
                 .addMethod(attachInfo())
+                .addMethod(obtainStatement())
+                .addMethod(recycleStatement())
+                .addMethod(releaseStatements())
+                .addMethod(resolveColumnIndices())
+                .addMethod(instantiateWithCursor())
+                .addMethod(columnIndices())
                 .addMethod(instantiate())
-                .addMethod(save())
-                .addMethod(updateWithClient())
-                .addMethod(updateIfActive())
-                .addMethod(remove())
-                .addMethods(setupRelations())
-                .addOriginatingElement(getOrigin())
-                .build();
+                .addMethod(instantiateInto())
+                .addMethod(iterate())
+                .addMethod(instantiateColumns())
+                .addMethod(fillColumns())
+                .addMethod(instantiateAll())
+                .addMethods(loadRelations())
+                .addMethod(query())
+                .addMethods(finders())
+                .addMethod(count())
+                .addMethods(aggregates())
+                .addMethods(countBy())
+                .addMethod(hydrate())
+                .addOriginatingElement(getOrigin());
+        if (isCompositeKey()) {
+            builder.addMethod(upsert())
+                    .addMethod(upsertAll())
+                    .addMethod(removeByKey());
+        } else {
+            builder.addField(partialUpdates())
+                    .addMethod(exists())
+                    .addMethod(save())
+                    .addMethod(saveWithIdentities())
+                    .addMethod(saveAll())
+                    .addMethod(updateWithClient())
+                    .addMethod(updateWithSnapshot())
+                    .addMethod(updateColumns())
+                    .addMethod(obtainPartialUpdate())
+                    .addMethod(recyclePartialUpdate())
+                    .addMethods(mActiveRecord ? updateIfActive() : Collections.<MethodSpec>emptyList())
+                    .addMethod(remove())
+                    .addMethods(setupRelations());
+        }
+        if (!mJoinedRelations.isEmpty()) {
+            builder.addFields(joinFields())
+                    .addStaticBlock(joinBlock())
+                    .addMethod(instantiateJoined());
+        }
+        if (mIdentityMapSize > 0) {
+            builder.addField(identities())
+                    .addField(identityOrder())
+                    .addType(identityType())
+                    .addMethod(identity())
+                    .addMethod(attachIdentity())
+                    .addMethod(detachIdentity());
+        }
+        if (isDirtyTracking()) {
+            builder.addField(dirtyObjects())
+                    .addField(flushScheduled())
+                    .addField(flushExecutor())
+                    .addField(flushTask())
+                    .addType(flushTaskType())
+                    .addMethod(setFlushExecutor())
+                    .addMethod(markDirty())
+                    .addMethod(flush());
+        }
+        final TypeSpec typeSpec = builder.build();
         final JavaFile javaFile = JavaFile.builder(getPackageName(), typeSpec)
                 .addFileComment(AUTO_GENERATED_FILE)
                 .build();
@@ -200,6 +1037,7 @@ public class SQLiteObjectScanner extends ElementScanner {
             Logger.getGlobal().throwing(SQLiteObjectScanner.class.getName(), "brewJava", e);
         }
         attachHelperToProvider(javaFile, typeSpec);
+        releaseStatementsOnClose(javaFile, typeSpec);
         attachTableInfoToSchema(javaFile, typeSpec);
         return ClassName.get(javaFile.packageName, typeSpec.name);
     }
@@ -216,6 +1054,259 @@ public class SQLiteObjectScanner extends ElementScanner {
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
                 .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
                 .addStatement("sClientRef = new $T<>(client)", ClassName.get(WeakReference.class))
+                .addCode(clearIdentities())
+                .build();
+    }
+
+    private List<FieldSpec> statementIndices() {
+        final List<FieldSpec> fields = new ArrayList<>();
+        int index = 0;
+        for (final String name : allStatements().keySet()) {
+            fields.add(statementIndex(name, index++));
+        }
+        return fields;
+    }
+
+    private FieldSpec statementIndex(String name, int index) {
+        return FieldSpec.builder(TypeName.INT, name, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", index)
+                .build();
+    }
+
+    private FieldSpec statements() {
+        return FieldSpec.builder(ArrayTypeName.of(String.class), "STATEMENTS",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(stringArray(new ArrayList<>(allStatements().values())))
+                .build();
+    }
+
+    private Map<String, String> allStatements() {
+        final Map<String, String> statements = new LinkedHashMap<>();
+        statements.put("STMT_INSERT", insertSql(false));
+        if (isCompositeKey()) {
+            statements.put("STMT_DELETE", "DELETE FROM " + mTableName + " WHERE " + keyPredicate() + ";");
+        } else {
+            statements.put("STMT_INSERT_WITH_ID", insertSql(true));
+            statements.put("STMT_UPDATE", "UPDATE " + mTableName + " SET " +
+                    Strings.transformAndJoin(", ", mFieldToColumn.values(), new ColumnBinder()) + " WHERE " +
+                    keyPredicate() + ";");
+            statements.put("STMT_DELETE", "DELETE FROM " + mTableName + " WHERE " + keyPredicate() + ";");
+            for (final String column : mFieldToColumn.values()) {
+                statements.put(columnStatement(column),
+                        "UPDATE " + mTableName + " SET " + column + " = ? WHERE " + keyPredicate() + ";");
+            }
+        }
+        statements.putAll(scalarStatements());
+        statements.putAll(mRelationStatements);
+        return statements;
+    }
+
+    private Map<String, String> scalarStatements() {
+        final Map<String, String> statements = new LinkedHashMap<>();
+        statements.put("STMT_COUNT", "SELECT COUNT(*) FROM " + mTableName + ";");
+        if (!isCompositeKey()) {
+            statements.put("STMT_EXISTS", "SELECT EXISTS(SELECT 1 FROM " + mTableName + " WHERE _id = ?);");
+        }
+        for (final Map.Entry<String, String> entry : mFieldToColumn.entrySet()) {
+            if (isAggregatable(entry.getKey())) {
+                final String column = entry.getValue();
+                statements.put("STMT_MAX_" + column.toUpperCase(Locale.US),
+                        "SELECT MAX(" + column + ") FROM " + mTableName + ";");
+                statements.put("STMT_MIN_" + column.toUpperCase(Locale.US),
+                        "SELECT MIN(" + column + ") FROM " + mTableName + ";");
+                statements.put("STMT_SUM_" + column.toUpperCase(Locale.US),
+                        "SELECT IFNULL(SUM(" + column + "), 0) FROM " + mTableName + ";");
+                if (isStoredAsLong(entry.getKey())) {
+                    statements.put("STMT_HAS_" + column.toUpperCase(Locale.US), "SELECT EXISTS(SELECT 1 FROM " +
+                            mTableName + " WHERE " + column + " IS NOT NULL);");
+                }
+            }
+        }
+        for (final Finder finder : mFinders) {
+            statements.put(finder.countName(), "SELECT COUNT(*) FROM " + mTableName + finder.where(false) + ";");
+        }
+        return statements;
+    }
+
+    private boolean isAggregatable(String fieldName) {
+        for (final VariableElement field : ElementFilter.fieldsIn(getOrigin().getEnclosedElements())) {
+            if (field.getSimpleName().contentEquals(fieldName) && field.getAnnotation(SQLiteFk.class) != null) {
+                return false;
+            }
+        }
+        final TypeMirror type = mFieldToType.get(fieldName);
+        return isIntegral(type) || TypeKind.DOUBLE == type.getKind() || TypeKind.FLOAT == type.getKind()
+                || mFieldToConversion.get(fieldName) instanceof ScaledDecimalConversion;
+    }
+
+    private boolean isStoredAsLong(String fieldName) {
+        return isIntegral(mFieldToType.get(fieldName))
+                || mFieldToConversion.get(fieldName) instanceof ScaledDecimalConversion;
+    }
+
+    private static boolean isIntegral(TypeMirror type) {
+        return TypeKind.LONG == type.getKind() || TypeKind.INT == type.getKind() || TypeKind.SHORT == type.getKind();
+    }
+
+    private FieldSpec statementCache() {
+        return FieldSpec.builder(ArrayTypeName.of(ClassName.get("droidkit.sqlite", "SQLiteStmt")), "STATEMENT_CACHE",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T[STATEMENTS.length]", ClassName.get("droidkit.sqlite", "SQLiteStmt"))
+                .build();
+    }
+
+    private FieldSpec statementClientRef() {
+        return FieldSpec.builder(ParameterizedTypeName.get(
+                ClassName.get(Reference.class),
+                ClassName.get("droidkit.sqlite", "SQLiteClient")
+        ), "sStatementClientRef", Modifier.PRIVATE, Modifier.STATIC).build();
+    }
+
+    private MethodSpec obtainStatement() {
+        return MethodSpec.methodBuilder("obtainStatement")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(TypeName.INT, "index")
+                .returns(ClassName.get("droidkit.sqlite", "SQLiteStmt"))
+                .beginControlFlow("synchronized (STATEMENT_CACHE)")
+                .addCode(attachStatementClient())
+                .addStatement("final $T stmt = STATEMENT_CACHE[index]", ClassName.get("droidkit.sqlite", "SQLiteStmt"))
+                .beginControlFlow("if (stmt != null)")
+                .addStatement("STATEMENT_CACHE[index] = null")
+                .addStatement("return stmt")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return client.compileStatement(STATEMENTS[index])")
+                .build();
+    }
+
+    private MethodSpec recycleStatement() {
+        return MethodSpec.methodBuilder("recycleStatement")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(TypeName.INT, "index")
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteStmt"), "stmt")
+                .beginControlFlow("synchronized (STATEMENT_CACHE)")
+                .beginControlFlow("if (STATEMENT_CACHE[index] == null && sStatementClientRef != null"
+                        + " && sStatementClientRef.get() == client)")
+                .addStatement("STATEMENT_CACHE[index] = stmt")
+                .addStatement("return")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("stmt.close()")
+                .build();
+    }
+
+    /**
+     * Checks a cached statement out for the duration of {@code statements}, the cache lock is never held while the
+     * statement runs.
+     */
+    static CodeBlock withStatement(String stmtIndex, CodeBlock statements) {
+        return withStatement("stmt", stmtIndex, statements);
+    }
+
+    static CodeBlock withStatement(String stmt, String stmtIndex, CodeBlock statements) {
+        return CodeBlock.builder()
+                .addStatement("final $T $L = obtainStatement(client, $L)",
+                        ClassName.get("droidkit.sqlite", "SQLiteStmt"), stmt, stmtIndex)
+                .beginControlFlow("try")
+                .add(statements)
+                .nextControlFlow("finally")
+                .addStatement("recycleStatement(client, $L, $L)", stmtIndex, stmt)
+                .endControlFlow()
+                .build();
+    }
+
+    private CodeBlock attachStatementClient() {
+        return CodeBlock.builder()
+                .beginControlFlow("if (sStatementClientRef == null || sStatementClientRef.get() != client)")
+                .addStatement("releaseStatements()")
+                .addStatement("sStatementClientRef = new $T<>(client)", ClassName.get(WeakReference.class))
+                .endControlFlow()
+                .build();
+    }
+
+    private FieldSpec partialUpdates() {
+        return FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class),
+                ClassName.get("droidkit.sqlite", "SQLiteStmt")), "PARTIAL_UPDATES",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T<>()", ClassName.get(LinkedHashMap.class))
+                .build();
+    }
+
+    private MethodSpec obtainPartialUpdate() {
+        return MethodSpec.methodBuilder("obtainPartialUpdate")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(String.class, "sql")
+                .returns(ClassName.get("droidkit.sqlite", "SQLiteStmt"))
+                .beginControlFlow("synchronized (STATEMENT_CACHE)")
+                .addCode(attachStatementClient())
+                .addStatement("final $T stmt = PARTIAL_UPDATES.remove(sql)",
+                        ClassName.get("droidkit.sqlite", "SQLiteStmt"))
+                .beginControlFlow("if (stmt != null)")
+                .addStatement("return stmt")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return client.compileStatement(sql)")
+                .build();
+    }
+
+    private MethodSpec recyclePartialUpdate() {
+        final ClassName stmtType = ClassName.get("droidkit.sqlite", "SQLiteStmt");
+        // obtain removes and recycle re-inserts, so insertion order is least recently used first
+        return MethodSpec.methodBuilder("recyclePartialUpdate")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(String.class, "sql")
+                .addParameter(stmtType, "stmt")
+                .addStatement("final $T evicted", stmtType)
+                .beginControlFlow("synchronized (STATEMENT_CACHE)")
+                .beginControlFlow("if (!PARTIAL_UPDATES.containsKey(sql) && sStatementClientRef != null"
+                        + " && sStatementClientRef.get() == client)")
+                .addStatement("PARTIAL_UPDATES.put(sql, stmt)")
+                .beginControlFlow("if (PARTIAL_UPDATES.size() <= $L)", MAX_PARTIAL_UPDATES)
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("final $T eldest = PARTIAL_UPDATES.values().iterator()",
+                        ParameterizedTypeName.get(ClassName.get(Iterator.class), stmtType))
+                .addStatement("evicted = eldest.next()")
+                .addStatement("eldest.remove()")
+                .nextControlFlow("else")
+                .addStatement("evicted = stmt")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("evicted.close()")
+                .build();
+    }
+
+    private CodeBlock releasePartialUpdates() {
+        final CodeBlock.Builder builder = CodeBlock.builder();
+        if (!isCompositeKey()) {
+            builder.beginControlFlow("for (final $T stmt : PARTIAL_UPDATES.values())",
+                    ClassName.get("droidkit.sqlite", "SQLiteStmt"))
+                    .addStatement("stmt.close()")
+                    .endControlFlow()
+                    .addStatement("PARTIAL_UPDATES.clear()");
+        }
+        return builder.build();
+    }
+
+    private MethodSpec releaseStatements() {
+        return MethodSpec.methodBuilder("releaseStatements")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .beginControlFlow("synchronized (STATEMENT_CACHE)")
+                .beginControlFlow("for (int i = 0; i < STATEMENT_CACHE.length; ++i)")
+                .addStatement("final $T stmt = STATEMENT_CACHE[i]", ClassName.get("droidkit.sqlite", "SQLiteStmt"))
+                .beginControlFlow("if (stmt != null)")
+                .addStatement("stmt.close()")
+                .addStatement("STATEMENT_CACHE[i] = null")
+                .endControlFlow()
+                .endControlFlow()
+                .addCode(releasePartialUpdates())
+                .addStatement("sStatementClientRef = null")
+                .endControlFlow()
+                .addCode(clearIdentities())
                 .build();
     }
 
@@ -224,7 +1315,7 @@ public class SQLiteObjectScanner extends ElementScanner {
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
                 .addParameter(ClassName.get("droidkit.sqlite", "SQLiteDb"), "db")
                 .addStatement("db.compileStatement($S).execute()", "CREATE TABLE IF NOT EXISTS " + mTableName +
-                        "(" + Strings.join(", ", mColumnsDef) + ");")
+                        "(" + Strings.join(", ", mColumnsDef) + ")" + (mWithoutRowId ? " WITHOUT ROWID;" : ";"))
                 .build();
     }
 
@@ -276,120 +1367,1435 @@ public class SQLiteObjectScanner extends ElementScanner {
         return builder.build();
     }
 
-    private MethodSpec instantiate() {
-        final CodeBlock.Builder statements = CodeBlock.builder();
-        for (final Action1<CodeBlock.Builder> action : mInstantiateActions) {
-            action.call(statements);
-        }
-        return MethodSpec.methodBuilder("instantiate")
-                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+    private FieldSpec projection() {
+        return FieldSpec.builder(ArrayTypeName.of(String.class), "PROJECTION",
+                Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer(stringArray(mColumns))
+                .build();
+    }
+
+    private FieldSpec qualifiedColumns() {
+        return FieldSpec.builder(String.class, "QUALIFIED_COLUMNS", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$S", Strings.transformAndJoin(", ", mColumns, new QualifiedColumn(mTableName)))
+                .build();
+    }
+
+    private FieldSpec queryTags() {
+        final Set<TypeName> tags = new LinkedHashSet<>();
+        tags.add(ClassName.get(getOrigin()));
+        for (final RelationField relation : mJoinedRelations) {
+            tags.add(ClassName.get((TypeElement) getEnv().asElement(relation.mRelType)));
+        }
+        for (final RelationField relation : mListRelations) {
+            tags.add(ClassName.get((TypeElement) getEnv().asElement(relation.mRelType)));
+        }
+        final CodeBlock.Builder initializer = CodeBlock.builder().add("{");
+        for (final Iterator<TypeName> iterator = tags.iterator(); iterator.hasNext(); ) {
+            initializer.add("$T.class", iterator.next());
+            if (iterator.hasNext()) {
+                initializer.add(", ");
+            }
+        }
+        return FieldSpec.builder(ArrayTypeName.of(ParameterizedTypeName.get(ClassName.get(Class.class),
+                WildcardTypeName.subtypeOf(Object.class))), "QUERY_TAGS",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(initializer.add("}").build())
+                .build();
+    }
+
+    private FieldSpec projectionIndices() {
+        final List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < mColumns.size(); ++i) {
+            indices.add(i);
+        }
+        return FieldSpec.builder(ArrayTypeName.of(TypeName.INT), "PROJECTION_INDICES",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("{$L}", Strings.join(", ", indices))
+                .build();
+    }
+
+    private FieldSpec columnIndicesRef() {
+        return FieldSpec.builder(ClassName.get(getPackageName(), getClassName(), "ColumnIndices"),
+                "sColumnIndices", Modifier.PRIVATE, Modifier.STATIC, Modifier.VOLATILE).build();
+    }
+
+    private TypeSpec columnIndicesType() {
+        return TypeSpec.classBuilder("ColumnIndices")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .superclass(ParameterizedTypeName.get(
+                        ClassName.get(WeakReference.class),
+                        ClassName.get("android.database", "Cursor")))
+                .addField(ArrayTypeName.of(TypeName.INT), "mIndices", Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                        .addParameter(ArrayTypeName.of(TypeName.INT), "indices")
+                        .addStatement("super(cursor)")
+                        .addStatement("mIndices = indices")
+                        .build())
+                .build();
+    }
+
+    private MethodSpec resolveColumnIndices() {
+        return MethodSpec.methodBuilder("resolveColumnIndices")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .returns(ArrayTypeName.of(TypeName.INT))
+                .addStatement("final int[] indices = new int[PROJECTION.length]")
+                .beginControlFlow("for (int i = 0; i < indices.length; ++i)")
+                .addStatement("indices[i] = cursor.getColumnIndex(PROJECTION[i])")
+                .endControlFlow()
+                .addStatement("return indices")
+                .build();
+    }
+
+    private MethodSpec instantiateWithCursor() {
+        return MethodSpec.methodBuilder("instantiate")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .returns(ClassName.get(getOrigin()))
+                .addStatement("return instantiate(cursor, columnIndices(cursor))")
+                .build();
+    }
+
+    private MethodSpec columnIndices() {
+        final ClassName columnIndices = ClassName.get(getPackageName(), getClassName(), "ColumnIndices");
+        return MethodSpec.methodBuilder("columnIndices")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .returns(ArrayTypeName.of(TypeName.INT))
+                .addStatement("$T columnIndices = sColumnIndices", columnIndices)
+                .beginControlFlow("if (columnIndices == null || columnIndices.get() != cursor)")
+                .addStatement("columnIndices = new $T(cursor, resolveColumnIndices(cursor))", columnIndices)
+                .addStatement("sColumnIndices = columnIndices")
+                .endControlFlow()
+                .addStatement("return columnIndices.mIndices")
+                .build();
+    }
+
+    private MethodSpec instantiateInto() {
+        return MethodSpec.methodBuilder("instantiate")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .addParameter(ClassName.get(getOrigin()), "target")
+                .returns(ClassName.get(getOrigin()))
+                .addStatement("fillColumns(cursor, columnIndices(cursor), target, false)")
+                .addStatement("return target")
+                .build();
+    }
+
+    private MethodSpec iterate() {
+        final ClassName originType = ClassName.get(getOrigin());
+        final TypeName iteratorType = ParameterizedTypeName.get(ClassName.get(Iterator.class), originType);
+        return MethodSpec.methodBuilder("iterate")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor", Modifier.FINAL)
+                .returns(ParameterizedTypeName.get(ClassName.get(Iterable.class), originType))
+                .addStatement("final int[] indices = resolveColumnIndices(cursor)")
+                .addStatement("return $L", TypeSpec.anonymousClassBuilder("")
+                        .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Iterable.class), originType))
+                        .addMethod(MethodSpec.methodBuilder("iterator")
+                                .addAnnotation(Override.class)
+                                .addModifiers(Modifier.PUBLIC)
+                                .returns(iteratorType)
+                                .addStatement("cursor.moveToPosition(-1)")
+                                .addStatement("return new RowIterator(cursor, indices)")
+                                .build())
+                        .build())
+                .build();
+    }
+
+    private TypeSpec rowIteratorType() {
+        final ClassName originType = ClassName.get(getOrigin());
+        final ClassName cursor = ClassName.get("android.database", "Cursor");
+        return TypeSpec.classBuilder("RowIterator")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Iterator.class), originType))
+                .addField(cursor, "mCursor", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(ArrayTypeName.of(TypeName.INT), "mIndices", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(originType, "mObject", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", originType)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(cursor, "cursor")
+                        .addParameter(ArrayTypeName.of(TypeName.INT), "indices")
+                        .addStatement("mCursor = cursor")
+                        .addStatement("mIndices = indices")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("hasNext")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(TypeName.BOOLEAN)
+                        .addStatement("return mCursor.getPosition() < mCursor.getCount() - 1")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("next")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(originType)
+                        .beginControlFlow("if (!mCursor.moveToNext())")
+                        .addStatement("throw new $T()", ClassName.get(NoSuchElementException.class))
+                        .endControlFlow()
+                        .addStatement("fillColumns(mCursor, mIndices, mObject, true)")
+                        .addStatement("return mObject")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("remove")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addStatement("throw new $T()", ClassName.get(UnsupportedOperationException.class))
+                        .build())
+                .build();
+    }
+
+    private MethodSpec instantiate() {
+        final CodeBlock.Builder statements = CodeBlock.builder();
+        for (final RelationField relation : mJoinedRelations) {
+            relation.mLookup.call(statements);
+        }
+        for (final RelationField relation : mListRelations) {
+            relation.mLookup.call(statements);
+        }
+        return MethodSpec.methodBuilder("instantiate")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .addParameter(ArrayTypeName.of(TypeName.INT), "indices")
                 .returns(ClassName.get(getOrigin()))
-                .addStatement("final $1T object = new $1T()", ClassName.get(getOrigin()))
+                .addStatement("final $T object = instantiateColumns(cursor, indices)", ClassName.get(getOrigin()))
+                .addCode(statements.build())
+                .addStatement("return object")
+                .build();
+    }
+
+    private MethodSpec instantiateColumns() {
+        final MethodSpec.Builder builder = MethodSpec.methodBuilder("instantiateColumns")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .addParameter(ArrayTypeName.of(TypeName.INT), "indices")
+                .returns(ClassName.get(getOrigin()));
+        if (mIdentityMapSize > 0) {
+            final int rowIdIndex = mColumns.indexOf(SQLitePkVisitor.ROWID);
+            return builder.beginControlFlow("if (indices[$L] < 0)", rowIdIndex)
+                    .addStatement("final $1T object = new $1T()", ClassName.get(getOrigin()))
+                    .addStatement("fillColumns(cursor, indices, object, false)")
+                    .addStatement("return object")
+                    .endControlFlow()
+                    .addStatement("final long rowId = cursor.getLong(indices[$L])", rowIdIndex)
+                    .addStatement("$T object = identity(rowId)", ClassName.get(getOrigin()))
+                    .beginControlFlow("if (object == null)")
+                    .addStatement("object = new $T()", ClassName.get(getOrigin()))
+                    .addStatement("attachIdentity(rowId, object)")
+                    .endControlFlow()
+                    .addStatement("fillColumns(cursor, indices, object, false)")
+                    .addStatement("return object")
+                    .build();
+        }
+        return builder.addStatement("final $1T object = new $1T()", ClassName.get(getOrigin()))
+                .addStatement("fillColumns(cursor, indices, object, false)")
+                .addStatement("return object")
+                .build();
+    }
+
+    private MethodSpec fillColumns() {
+        final CodeBlock.Builder statements = CodeBlock.builder();
+        for (final Action1<CodeBlock.Builder> action : mInstantiateActions) {
+            action.call(statements);
+        }
+        return MethodSpec.methodBuilder("fillColumns")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .addParameter(ArrayTypeName.of(TypeName.INT), "indices")
+                .addParameter(ClassName.get(getOrigin()), "object")
+                .addParameter(TypeName.BOOLEAN, "reuseRelations")
+                .addCode(statements.build())
+                .build();
+    }
+
+    private MethodSpec instantiateAll() {
+        final TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), ClassName.get(getOrigin()));
+        final CodeBlock.Builder load = CodeBlock.builder();
+        for (final RelationField relation : mJoinedRelations) {
+            load.addStatement("$L(client, objects)", relation.loaderName());
+        }
+        return MethodSpec.methodBuilder("instantiateAll")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .returns(listType)
+                .addStatement("final int[] indices = resolveColumnIndices(cursor)")
+                .addStatement("final $T objects = new $T<>(cursor.getCount())", listType,
+                        ClassName.get(ArrayList.class))
+                .beginControlFlow("while (cursor.moveToNext())")
+                .addStatement("objects.add(instantiateColumns(cursor, indices))")
+                .endControlFlow()
+                .addCode(load.build())
+                .addCode(loadListRelations())
+                .addStatement("return objects")
+                .build();
+    }
+
+    private List<MethodSpec> loadRelations() {
+        final List<MethodSpec> methods = new ArrayList<>();
+        for (final RelationField relation : mJoinedRelations) {
+            methods.add(loadRelation(relation, false));
+        }
+        for (final RelationField relation : mListRelations) {
+            methods.add(loadRelation(relation, true));
+        }
+        return methods;
+    }
+
+    private MethodSpec loadRelation(RelationField relation, boolean toMany) {
+        final ClassName originType = ClassName.get(getOrigin());
+        final ClassName relType = ClassName.get((TypeElement) getEnv().asElement(relation.mRelType));
+        final ClassName helper = ClassName.get(relType.packageName(), relType.simpleName() + "$SQLiteHelper");
+        final String relTypeTable = getEnv().asElement(relation.mRelType).getAnnotation(SQLiteObject.class).value();
+        final CodeBlock.Builder prepare = CodeBlock.builder()
+                .beginControlFlow("for (final $T object : objects)", originType);
+        if (toMany) {
+            prepare.addStatement("object.$L = new $T<>()", relation.mFieldName, ClassName.get(ArrayList.class));
+        } else {
+            prepare.addStatement("object.$L = null", relation.mFieldName);
+        }
+        prepare.addStatement("parents.put(object.$L, object)", getPk())
+                .endControlFlow();
+        final CodeBlock.Builder assign = CodeBlock.builder()
+                .addStatement("final $T parent = parents.get(cursor.getLong(0))", originType);
+        if (toMany) {
+            assign.beginControlFlow("if (parent != null)")
+                    .addStatement("parent.$L.add($T.instantiate(cursor, indices))", relation.mFieldName, helper);
+        } else {
+            assign.beginControlFlow("if (parent != null && parent.$L == null)", relation.mFieldName)
+                    .addStatement("parent.$L = $T.instantiate(cursor, indices)", relation.mFieldName, helper);
+        }
+        assign.endControlFlow();
+        return MethodSpec.methodBuilder(relation.loaderName())
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ParameterizedTypeName.get(ClassName.get(List.class), originType), "objects")
+                .beginControlFlow("if (objects.isEmpty())")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("final $1T<$2T> parents = new $1T<>(objects.size())",
+                        ClassName.get("android.util", "LongSparseArray"), originType)
+                .addCode(prepare.build())
+                .addStatement("final int[] indices = new int[$T.PROJECTION.length]", helper)
+                .beginControlFlow("for (int i = 0; i < indices.length; ++i)")
+                .addStatement("indices[i] = i + 1")
+                .endControlFlow()
+                .addStatement("final $T sql = new $T()", ClassName.get(StringBuilder.class),
+                        ClassName.get(StringBuilder.class))
+                .beginControlFlow("for (int start = 0; start < objects.size(); start += $L)", IN_CHUNK_SIZE)
+                .addStatement("final int end = $T.min(start + $L, objects.size())", ClassName.get(Math.class),
+                        IN_CHUNK_SIZE)
+                .addStatement("sql.setLength(0)")
+                .addStatement("sql.append($S).append($T.QUALIFIED_COLUMNS).append($S)",
+                        "SELECT " + relation.mRelTable + "." + mTableName + "_id, ", helper,
+                        String.format(Locale.US, " FROM %1$s, %2$s WHERE %1$s._id = %2$s.%1$s_id" +
+                                " AND %2$s.%3$s_id IN (", relTypeTable, relation.mRelTable, mTableName))
+                .beginControlFlow("for (int i = start; i < end; ++i)")
+                .beginControlFlow("if (i > start)")
+                .addStatement("sql.append(',')")
+                .endControlFlow()
+                .addStatement("sql.append(objects.get(i).$L)", getPk())
+                .endControlFlow()
+                .addStatement("final $T cursor = client.query(sql.append($S).toString())",
+                        ClassName.get("android.database", "Cursor"), ");")
+                .beginControlFlow("try")
+                .beginControlFlow("while (cursor.moveToNext())")
+                .addCode(assign.build())
+                .endControlFlow()
+                .nextControlFlow("finally")
+                .addStatement("cursor.close()")
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+    private MethodSpec query() {
+        final TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), ClassName.get(getOrigin()));
+        final ClassName queryCache = ClassName.get("droidkit.sqlite", "SQLiteQueryCache");
+        final MethodSpec.Builder builder = MethodSpec.methodBuilder("query")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(String.class, "selection")
+                .addParameter(Object[].class, "bindArgs")
+                .varargs()
+                .returns(listType)
+                .addStatement("final $T cached = $T.get(client, $T.class, selection, bindArgs)", listType, queryCache,
+                        ClassName.get(getOrigin()))
+                .beginControlFlow("if (cached != null)")
+                .addStatement("return cached")
+                .endControlFlow()
+                .addStatement("final long generation = $T.generation()", queryCache);
+        if (mJoinedRelations.isEmpty()) {
+            builder.addStatement("final $T cursor = client.query(selection == null ? $S : $S + selection, bindArgs)",
+                    ClassName.get("android.database", "Cursor"),
+                    "SELECT " + Strings.join(", ", mColumns) + " FROM " + mTableName + ";",
+                    "SELECT " + Strings.join(", ", mColumns) + " FROM " + mTableName + " WHERE ");
+        } else {
+            builder.addStatement("final $T cursor = client.query(JOIN_SELECT + " +
+                            "(selection == null ? JOIN_FROM : $S + selection + JOIN_FROM), bindArgs)",
+                    ClassName.get("android.database", "Cursor"), " WHERE ");
+        }
+        return builder.addStatement("final $T objects = hydrate(client, cursor)", listType)
+                .addStatement("$T.put(client, $T.class, selection, bindArgs, objects, QUERY_TAGS, generation)",
+                        queryCache, ClassName.get(getOrigin()))
+                .addStatement("return objects")
+                .build();
+    }
+
+    private MethodSpec hydrate() {
+        final TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), ClassName.get(getOrigin()));
+        return MethodSpec.methodBuilder("hydrate")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .returns(listType)
+                .beginControlFlow("try")
+                .addStatement("final $T objects = new $T<>(cursor.getCount())", listType,
+                        ClassName.get(ArrayList.class))
+                .beginControlFlow("while (cursor.moveToNext())")
+                .addStatement(mJoinedRelations.isEmpty()
+                        ? "objects.add(instantiateColumns(cursor, PROJECTION_INDICES))"
+                        : "objects.add(instantiateJoined(cursor))")
+                .endControlFlow()
+                .addCode(loadListRelations())
+                .addStatement("return objects")
+                .nextControlFlow("finally")
+                .addStatement("cursor.close()")
+                .endControlFlow()
+                .build();
+    }
+
+    private List<FieldSpec> finderFields() {
+        final List<FieldSpec> fields = new ArrayList<>();
+        for (final Finder finder : mFinders) {
+            if (!finder.mUnique) {
+                fields.add(finderField(finder, false));
+            }
+            fields.add(finderField(finder, true));
+        }
+        return fields;
+    }
+
+    private FieldSpec finderField(Finder finder, boolean first) {
+        final FieldSpec.Builder builder = FieldSpec.builder(String.class, finder.sqlName(first),
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+        if (mJoinedRelations.isEmpty()) {
+            builder.initializer("$S", "SELECT " + Strings.join(", ", mColumns) + " FROM " + mTableName +
+                    finder.where(first) + ";");
+        }
+        return builder.build();
+    }
+
+    private List<String> finderFields(Finder finder) {
+        final Map<String, String> columnToField = new HashMap<>();
+        for (final Map.Entry<String, String> entry : mFieldToColumn.entrySet()) {
+            columnToField.put(entry.getValue(), entry.getKey());
+        }
+        final List<String> fields = new ArrayList<>();
+        for (final String column : finder.mColumns) {
+            if (!columnToField.containsKey(column)) {
+                return null;
+            }
+            fields.add(columnToField.get(column));
+        }
+        return fields;
+    }
+
+    private List<MethodSpec> finders() {
+        final List<MethodSpec> methods = new ArrayList<>();
+        for (final Finder finder : mFinders) {
+            final List<String> fields = finderFields(finder);
+            if (fields == null) {
+                getEnv().printMessage(Diagnostic.Kind.WARNING, getOrigin(),
+                        "No finder generated for " + finder.mColumns + ": not all columns are mapped");
+                continue;
+            }
+            if (!finder.mUnique) {
+                methods.add(finder(finder, fields, false));
+            }
+            methods.add(finder(finder, fields, true));
+        }
+        return methods;
+    }
+
+    private MethodSpec count() {
+        return MethodSpec.methodBuilder("count")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .returns(TypeName.LONG)
+                .addCode(simpleQuery("STMT_COUNT", CodeBlock.builder().build(), "return stmt.simpleQueryForLong()"))
+                .build();
+    }
+
+    private MethodSpec exists() {
+        return MethodSpec.methodBuilder("exists")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(TypeName.LONG, "rowId")
+                .returns(TypeName.BOOLEAN)
+                .addCode(simpleQuery("STMT_EXISTS", CodeBlock.builder().addStatement("stmt.bindLong(1, rowId)").build(),
+                        "return stmt.simpleQueryForLong() != 0"))
+                .build();
+    }
+
+    private List<MethodSpec> aggregates() {
+        final List<MethodSpec> methods = new ArrayList<>();
+        for (final Map.Entry<String, String> entry : mFieldToColumn.entrySet()) {
+            final TypeMirror type = mFieldToType.get(entry.getKey());
+            if (isAggregatable(entry.getKey())) {
+                final String property = SQLiteColumnVisitor.canonicalSetterName(entry.getKey(), "").substring(3);
+                for (final String function : Arrays.asList("MAX", "MIN", "SUM")) {
+                    final MethodSpec.Builder builder = MethodSpec
+                            .methodBuilder(function.toLowerCase(Locale.US) + property)
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                            .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client");
+                    final String stmtName = "STMT_" + function + "_" + entry.getValue().toUpperCase(Locale.US);
+                    final TypeConversion conversion = mFieldToConversion.get(entry.getKey());
+                    if (!"SUM".equals(function) && isStoredAsLong(entry.getKey())) {
+                        // MAX/MIN are NULL only for an empty column, which reads as 0, so only 0 is checked
+                        final String hasStmtName = "STMT_HAS_" + entry.getValue().toUpperCase(Locale.US);
+                        final CodeBlock.Builder body = CodeBlock.builder()
+                                .addStatement("final long value")
+                                .add(simpleQuery(stmtName, CodeBlock.builder().build(),
+                                        "value = stmt.simpleQueryForLong()"))
+                                .beginControlFlow("if (value == 0)")
+                                .add(withStatement("hasStmt", hasStmtName, CodeBlock.builder()
+                                        .beginControlFlow("if (hasStmt.simpleQueryForLong() == 0)")
+                                        .addStatement("return null")
+                                        .endControlFlow()
+                                        .build()))
+                                .endControlFlow();
+                        if (conversion instanceof ScaledDecimalConversion) {
+                            builder.returns(ClassName.get(BigDecimal.class));
+                            body.addStatement("return $T.valueOf(value, $L)", ClassName.get(BigDecimal.class),
+                                    ((ScaledDecimalConversion) conversion).getScale());
+                        } else {
+                            builder.returns(TypeName.LONG.box());
+                            body.addStatement("return value");
+                        }
+                        methods.add(builder.addCode(body.build()).build());
+                        continue;
+                    }
+                    if (!"SUM".equals(function)) {
+                        final CodeBlock.Builder result = CodeBlock.builder()
+                                .addStatement("final String value = stmt.simpleQueryForString()")
+                                .beginControlFlow("if (value == null)")
+                                .addStatement("return null")
+                                .endControlFlow();
+                        // SQLiteStmt reads REAL values only as text
+                        builder.returns(TypeName.DOUBLE.box());
+                        result.addStatement("return $T.valueOf(value)", ClassName.get(Double.class));
+                        methods.add(builder.addCode(simpleQuery(stmtName, result.build())).build());
+                        continue;
+                    }
+                    if (conversion instanceof ScaledDecimalConversion) {
+                        builder.returns(ClassName.get(BigDecimal.class)).addCode(simpleQuery(stmtName,
+                                CodeBlock.builder().build(), "return $T.valueOf(stmt.simpleQueryForLong(), $L)",
+                                ClassName.get(BigDecimal.class), ((ScaledDecimalConversion) conversion).getScale()));
+                    } else if (isIntegral(type)) {
+                        builder.returns(TypeName.LONG).addCode(simpleQuery(stmtName, CodeBlock.builder().build(),
+                                "return stmt.simpleQueryForLong()"));
+                    } else {
+                        builder.returns(TypeName.DOUBLE).addCode(simpleQuery(stmtName, CodeBlock.builder().build(),
+                                "return Double.parseDouble(stmt.simpleQueryForString())"));
+                    }
+                    methods.add(builder.build());
+                }
+            }
+        }
+        return methods;
+    }
+
+    private List<MethodSpec> countBy() {
+        final List<MethodSpec> methods = new ArrayList<>();
+        for (final Finder finder : mFinders) {
+            final List<String> fields = finderFields(finder);
+            if (fields == null) {
+                continue;
+            }
+            final List<String> properties = new ArrayList<>();
+            final List<ParameterSpec> params = new ArrayList<>();
+            final CodeBlock.Builder binds = CodeBlock.builder();
+            final CodeBlock.Builder nullSafeBinds = CodeBlock.builder();
+            params.add(ParameterSpec.builder(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client").build());
+            int bindIndex = 0;
+            for (final String fieldName : fields) {
+                final String property = SQLiteColumnVisitor.canonicalSetterName(fieldName, "").substring(3);
+                final String paramName = Character.toLowerCase(property.charAt(0)) + property.substring(1);
+                properties.add(property);
+                params.add(ParameterSpec.builder(TypeName.get(mFieldToType.get(fieldName)), paramName).build());
+                final TypeConversion conversion = mFieldToConversion.get(fieldName);
+                conversion.bindToStatement(paramName, String.valueOf(++bindIndex)).call(binds);
+                if (isNullable(fieldName)) {
+                    nullSafeBinds.beginControlFlow("if ($L != null)", paramName);
+                    conversion.bindToStatement(paramName, "++bindIndex").call(nullSafeBinds);
+                    nullSafeBinds.endControlFlow();
+                } else {
+                    conversion.bindToStatement(paramName, "++bindIndex").call(nullSafeBinds);
+                }
+            }
+            final MethodSpec.Builder builder = MethodSpec.methodBuilder("countBy" + Strings.join("And", properties))
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameters(params)
+                    .returns(TypeName.LONG);
+            final String anyNull = anyNull(fields);
+            if (anyNull != null) {
+                builder.beginControlFlow("if ($L)", anyNull)
+                        .addCode(nullSafeWhere(finder, fields, false))
+                        .addStatement("final $T stmt = client.compileStatement($S + where + $S)",
+                                ClassName.get("droidkit.sqlite", "SQLiteStmt"),
+                                "SELECT COUNT(*) FROM " + mTableName, ";")
+                        .beginControlFlow("try")
+                        .addStatement("int bindIndex = 0")
+                        .addCode(nullSafeBinds.build())
+                        .addStatement("return stmt.simpleQueryForLong()")
+                        .nextControlFlow("finally")
+                        .addStatement("stmt.close()")
+                        .endControlFlow()
+                        .endControlFlow();
+            }
+            methods.add(builder
+                    .addCode(simpleQuery(finder.countName(), binds.build(), "return stmt.simpleQueryForLong()"))
+                    .build());
+        }
+        return methods;
+    }
+
+    private CodeBlock simpleQuery(String stmtName, CodeBlock binds, String statement, Object... args) {
+        return simpleQuery(stmtName, CodeBlock.builder()
+                .add(binds)
+                .addStatement(statement, args)
+                .build());
+    }
+
+    private CodeBlock simpleQuery(String stmtName, CodeBlock statements) {
+        return withStatement(stmtName, statements);
+    }
+
+    private MethodSpec finder(Finder finder, List<String> fields, boolean first) {
+        final List<String> properties = new ArrayList<>();
+        final List<ParameterSpec> params = new ArrayList<>();
+        final List<String> bindArgs = new ArrayList<>();
+        params.add(ParameterSpec.builder(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client").build());
+        for (final String fieldName : fields) {
+            final String property = SQLiteColumnVisitor.canonicalSetterName(fieldName, "").substring(3);
+            final String paramName = Character.toLowerCase(property.charAt(0)) + property.substring(1);
+            properties.add(property);
+            params.add(ParameterSpec.builder(TypeName.get(mFieldToType.get(fieldName)), paramName).build());
+            bindArgs.add(mFieldToConversion.get(fieldName).bindArgument(paramName));
+        }
+        final TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), ClassName.get(getOrigin()));
+        final MethodSpec.Builder builder = MethodSpec
+                .methodBuilder((first ? "findFirstBy" : "findBy") + Strings.join("And", properties))
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameters(params);
+        final String query = "hydrate(client, client.query(" + finder.sqlName(first) + ", " +
+                Strings.join(", ", bindArgs) + "))";
+        final String anyNull = anyNull(fields);
+        if (anyNull != null) {
+            builder.addStatement("final $T objects", listType)
+                    .beginControlFlow("if ($L)", anyNull)
+                    .addCode(nullSafeWhere(finder, fields, first))
+                    .addStatement("final $T<$T> bindArgs = new $T<>($L)", ClassName.get(List.class),
+                            ClassName.get(Object.class), ClassName.get(ArrayList.class), fields.size());
+            for (int i = 0; i < fields.size(); ++i) {
+                final String paramName = params.get(i + 1).name;
+                if (isNullable(fields.get(i))) {
+                    builder.beginControlFlow("if ($L != null)", paramName)
+                            .addStatement("bindArgs.add($L)", bindArgs.get(i))
+                            .endControlFlow();
+                } else {
+                    builder.addStatement("bindArgs.add($L)", bindArgs.get(i));
+                }
+            }
+            if (mJoinedRelations.isEmpty()) {
+                builder.addStatement("objects = hydrate(client, client.query($S + where + $S, bindArgs.toArray()))",
+                        "SELECT " + Strings.join(", ", mColumns) + " FROM " + mTableName, ";");
+            } else {
+                builder.addStatement("objects = hydrate(client, client.query(JOIN_SELECT + where + JOIN_FROM, " +
+                        "bindArgs.toArray()))");
+            }
+            builder.nextControlFlow("else")
+                    .addStatement("objects = $L", query)
+                    .endControlFlow();
+        } else {
+            builder.addStatement("final $T objects = $L", listType, query);
+        }
+        if (first) {
+            return builder.returns(ClassName.get(getOrigin()))
+                    .addStatement("return objects.isEmpty() ? null : objects.get(0)")
+                    .build();
+        }
+        return builder.returns(listType)
+                .addStatement("return objects")
+                .build();
+    }
+
+    private boolean isNullable(String fieldName) {
+        return !mFieldToType.get(fieldName).getKind().isPrimitive();
+    }
+
+    private String anyNull(List<String> fields) {
+        final List<String> checks = new ArrayList<>();
+        for (final String fieldName : fields) {
+            if (isNullable(fieldName)) {
+                final String property = SQLiteColumnVisitor.canonicalSetterName(fieldName, "").substring(3);
+                checks.add(Character.toLowerCase(property.charAt(0)) + property.substring(1) + " == null");
+            }
+        }
+        return checks.isEmpty() ? null : Strings.join(" || ", checks);
+    }
+
+    private CodeBlock nullSafeWhere(Finder finder, List<String> fields, boolean first) {
+        final CodeBlock.Builder builder = CodeBlock.builder()
+                .addStatement("final $1T where = new $1T($2S)", ClassName.get(StringBuilder.class), " WHERE ");
+        for (int i = 0; i < fields.size(); ++i) {
+            final String column = finder.mColumns.get(i);
+            if (i > 0) {
+                builder.addStatement("where.append($S)", " AND ");
+            }
+            if (isNullable(fields.get(i))) {
+                final String property = SQLiteColumnVisitor.canonicalSetterName(fields.get(i), "").substring(3);
+                builder.addStatement("where.append($L == null ? $S : $S)",
+                        Character.toLowerCase(property.charAt(0)) + property.substring(1),
+                        column + " IS NULL", column + " = ?");
+            } else {
+                builder.addStatement("where.append($S)", column + " = ?");
+            }
+        }
+        if (first) {
+            builder.addStatement("where.append($S)", " LIMIT 1");
+        }
+        return builder.build();
+    }
+
+    private CodeBlock loadListRelations() {
+        final CodeBlock.Builder builder = CodeBlock.builder();
+        for (final RelationField relation : mListRelations) {
+            builder.addStatement("$L(client, objects)", relation.loaderName());
+        }
+        return builder.build();
+    }
+
+    private List<FieldSpec> joinFields() {
+        final List<FieldSpec> fields = new ArrayList<>();
+        fields.add(FieldSpec.builder(String.class, "JOIN_SELECT", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .build());
+        final StringBuilder from = new StringBuilder(") AS ").append(mTableName);
+        for (int i = 0; i < mJoinedRelations.size(); ++i) {
+            final RelationField relation = mJoinedRelations.get(i);
+            final String relTypeTable = getEnv().asElement(relation.mRelType)
+                    .getAnnotation(SQLiteObject.class).value();
+            from.append(String.format(Locale.US, " LEFT JOIN %1$s AS join%4$d ON join%4$d._id = " +
+                            "(SELECT %1$s_id FROM %2$s WHERE %2$s.%3$s_id = %3$s._id LIMIT 1)",
+                    relTypeTable, relation.mRelTable, mTableName, i));
+            fields.add(FieldSpec.builder(TypeName.INT, "JOIN_ROWID_" + i,
+                    Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .build());
+            fields.add(FieldSpec.builder(ArrayTypeName.of(TypeName.INT), "JOIN_INDICES_" + i,
+                    Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .build());
+        }
+        fields.add(FieldSpec.builder(String.class, "JOIN_FROM", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$S", from.append(";").toString())
+                .build());
+        return fields;
+    }
+
+    private CodeBlock joinBlock() {
+        final CodeBlock.Builder block = CodeBlock.builder()
+                .addStatement("final $T sql = new $T($S)", ClassName.get(StringBuilder.class),
+                        ClassName.get(StringBuilder.class), "SELECT " + Strings.transformAndJoin(", ", mColumns,
+                                new QualifiedColumn(mTableName)))
+                .addStatement("int offset = PROJECTION.length");
+        for (int i = 0; i < mJoinedRelations.size(); ++i) {
+            final ClassName helper = ClassName.bestGuess(mJoinedRelations.get(i).mRelType + "$SQLiteHelper");
+            block.addStatement("sql.append($S)", ", join" + i + "._id")
+                    .addStatement("JOIN_ROWID_$L = offset++", i)
+                    .addStatement("JOIN_INDICES_$L = new int[$T.PROJECTION.length]", i, helper)
+                    .beginControlFlow("for (int i = 0; i < JOIN_INDICES_$L.length; ++i)", i)
+                    .addStatement("sql.append($S).append($T.PROJECTION[i])", ", join" + i + ".", helper)
+                    .addStatement("JOIN_INDICES_$L[i] = offset++", i)
+                    .endControlFlow();
+        }
+        block.addStatement("JOIN_SELECT = sql.append($S).toString()", " FROM (SELECT * FROM " + mTableName);
+        for (final Finder finder : mFinders) {
+            if (!finder.mUnique) {
+                block.addStatement("$L = JOIN_SELECT + $S + JOIN_FROM", finder.sqlName(false), finder.where(false));
+            }
+            block.addStatement("$L = JOIN_SELECT + $S + JOIN_FROM", finder.sqlName(true), finder.where(true));
+        }
+        return block.build();
+    }
+
+    private MethodSpec instantiateJoined() {
+        final CodeBlock.Builder statements = CodeBlock.builder();
+        for (int i = 0; i < mJoinedRelations.size(); ++i) {
+            final RelationField relation = mJoinedRelations.get(i);
+            statements.beginControlFlow("if (!cursor.isNull(JOIN_ROWID_$L))", i)
+                    .addStatement("object.$L = $T.instantiate(cursor, JOIN_INDICES_$L)", relation.mFieldName,
+                            ClassName.bestGuess(relation.mRelType + "$SQLiteHelper"), i)
+                    .endControlFlow();
+        }
+        return MethodSpec.methodBuilder("instantiateJoined")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("android.database", "Cursor"), "cursor")
+                .returns(ClassName.get(getOrigin()))
+                .addStatement("final $T object = instantiateColumns(cursor, PROJECTION_INDICES)",
+                        ClassName.get(getOrigin()))
                 .addCode(statements.build())
                 .addStatement("return object")
                 .build();
     }
 
     private MethodSpec save() {
-        final CodeBlock.Builder saveActions = CodeBlock.builder();
-        for (final Action1<CodeBlock.Builder> action : mSaveActions) {
-            action.call(saveActions);
+        final CodeBlock save = CodeBlock.builder()
+                .add(insert())
+                .addStatement("$T.notifyChange($T.class)",
+                        ClassName.get("droidkit.sqlite", "SQLiteChanges"),
+                        ClassName.get(getOrigin()))
+                .build();
+        if (mSaveActions.isEmpty()) {
+            return MethodSpec.methodBuilder("save")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                    .addParameter(ClassName.get(getOrigin()), "object")
+                    .returns(TypeName.LONG)
+                    .addCode(save)
+                    .addStatement("return object.$L", getPk())
+                    .build();
         }
+        return MethodSpec.methodBuilder("save")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ClassName.get(getOrigin()), "object")
+                .returns(TypeName.LONG)
+                .addStatement("return save(client, object, $L)", identitySet())
+                .build();
+    }
+
+    private MethodSpec saveWithIdentities() {
         final MethodSpec.Builder builder = MethodSpec.methodBuilder("save")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
                 .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
                 .addParameter(ClassName.get(getOrigin()), "object")
+                .addParameter(ParameterizedTypeName.get(Set.class, Object.class), "saved")
                 .returns(TypeName.LONG)
-                .beginControlFlow("if (object.$L > 0)", getPk());
-        if (!mFieldToColumn.isEmpty()) {
-            builder.addStatement("object.$1L = client.executeInsert($2S, object.$1L, $3L)", getPk(),
-                    String.format(Locale.US, "INSERT INTO %s(_id, %s) VALUES(?, %s);", mTableName,
-                            Strings.join(", ", mFieldToColumn.values()),
-                            Strings.join(", ", Collections.nCopies(mFieldToColumn.size(), "?"))),
-                    Strings.transformAndJoin(", ", mFieldToColumn.keySet(), new ObjectField()));
-        } else {
-            builder.addStatement("object.$1L = client.executeInsert($2S, object.$1L)", getPk(),
-                    String.format(Locale.US, "INSERT INTO %s(_id) VALUES(?);", mTableName));
+                .beginControlFlow("if (!saved.add(object))")
+                .addStatement("return object.$L", getPk())
+                .endControlFlow();
+        if (mSaveActions.isEmpty()) {
+            return builder.addStatement("return save(client, object)").build();
         }
-        return builder
-                .nextControlFlow("else")
-                .addStatement("object.$L = client.executeInsert($S, $L)", getPk(),
-                        String.format(Locale.US, "INSERT INTO %s(%s) VALUES(%s);", mTableName,
-                                Strings.join(", ", mFieldToColumn.values()),
-                                Strings.join(", ", Collections.nCopies(mFieldToColumn.size(), "?"))),
-                        Strings.transformAndJoin(", ", mFieldToColumn.keySet(), new ObjectField()))
-                .endControlFlow()
-                .addCode(saveActions.build())
+        final CodeBlock.Builder saveActions = CodeBlock.builder();
+        for (final Action1<CodeBlock.Builder> action : mSaveActions) {
+            action.call(saveActions);
+        }
+        return builder.addCode(transaction(CodeBlock.builder()
+                .add(insert())
+                .add(saveActions.build())
                 .addStatement("$T.notifyChange($T.class)",
-                        ClassName.get("droidkit.sqlite", "SQLiteSchema"),
+                        ClassName.get("droidkit.sqlite", "SQLiteChanges"),
                         ClassName.get(getOrigin()))
+                .build()))
                 .addStatement("return object.$L", getPk())
                 .build();
     }
 
+    private CodeBlock identitySet() {
+        return CodeBlock.builder()
+                .add("$T.newSetFromMap(new $T<Object, Boolean>())", ClassName.get(Collections.class),
+                        ClassName.get(IdentityHashMap.class))
+                .build();
+    }
+
+    private MethodSpec saveAll() {
+        final CodeBlock.Builder saveActions = CodeBlock.builder();
+        for (final Action1<CodeBlock.Builder> action : mSaveActions) {
+            action.call(saveActions);
+        }
+        return MethodSpec.methodBuilder("saveAll")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Collection.class), ClassName.get(getOrigin())),
+                        "objects")
+                .addStatement("final $T saved = $L", ParameterizedTypeName.get(Set.class, Object.class),
+                        identitySet())
+                .addCode(transaction(CodeBlock.builder()
+                        .beginControlFlow("for (final $T object : objects)", ClassName.get(getOrigin()))
+                        .beginControlFlow("if (saved.add(object))")
+                        .add(insert())
+                        .add(saveActions.build())
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("$T.notifyChange($T.class)",
+                                ClassName.get("droidkit.sqlite", "SQLiteChanges"),
+                                ClassName.get(getOrigin()))
+                        .build()))
+                .build();
+    }
+
     private MethodSpec updateWithClient() {
         return MethodSpec.methodBuilder("update")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
                 .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
                 .addParameter(ClassName.get(getOrigin()), "object")
                 .returns(TypeName.INT)
-                .addStatement("$T affectedRows = client.executeUpdateDelete($S, $L, $L)",
-                        TypeName.INT, "UPDATE " + mTableName + " SET " +
-                                Strings.transformAndJoin(", ", mFieldToColumn.values(), new ColumnBinder()) +
-                                " WHERE _id = ?;",
-                        Strings.transformAndJoin(", ", mFieldToColumn.keySet(), new ObjectField()),
-                        "object." + getPk())
+                .addCode(discardDirtyColumns())
+                .addStatement("final $T affectedRows", TypeName.INT)
+                .addCode(withStatement("STMT_UPDATE", CodeBlock.builder()
+                        .add(bindColumns(0))
+                        .addStatement("stmt.bindLong($L, object.$L)", mFieldToColumn.size() + 1, getPk())
+                        .addStatement("affectedRows = stmt.executeUpdateDelete()")
+                        .build()))
                 .beginControlFlow("if (affectedRows > 0)")
+                .addCode(attachIdentityIfEnabled())
                 .addStatement("$T.notifyChange($T.class)",
-                        ClassName.get("droidkit.sqlite", "SQLiteSchema"),
+                        ClassName.get("droidkit.sqlite", "SQLiteChanges"),
                         ClassName.get(getOrigin()))
                 .endControlFlow()
                 .addStatement("return affectedRows")
                 .build();
     }
 
-    private MethodSpec remove() {
+    private MethodSpec updateWithSnapshot() {
+        final CodeBlock.Builder compare = CodeBlock.builder();
+        for (final String fieldName : mFieldToColumn.keySet()) {
+            final TypeMirror type = mFieldToType.get(fieldName);
+            if (type.getKind().isPrimitive()) {
+                compare.beginControlFlow("if (object.$1L != snapshot.$1L)", fieldName);
+            } else if (type.getKind() == TypeKind.ARRAY) {
+                compare.beginControlFlow("if (!$T.equals(object.$L, snapshot.$L))", ClassName.get(Arrays.class),
+                        fieldName, fieldName);
+            } else {
+                compare.beginControlFlow("if (object.$1L == null ? snapshot.$1L != null : " +
+                        "!object.$1L.equals(snapshot.$1L))", fieldName);
+            }
+            compare.addStatement("mask[$1L >> 6] |= 1L << $1L", columnStatement(mFieldToColumn.get(fieldName)))
+                    .endControlFlow();
+        }
+        final CodeBlock.Builder pending = CodeBlock.builder();
+        if (isDirtyTracking()) {
+            pending.addStatement("final long[] dirtyMask")
+                    .beginControlFlow("synchronized (DIRTY_OBJECTS)")
+                    .addStatement("dirtyMask = DIRTY_OBJECTS.remove(object)")
+                    .endControlFlow()
+                    .beginControlFlow("if (dirtyMask != null)")
+                    .beginControlFlow("for (int i = 0; i < mask.length; ++i)")
+                    .addStatement("mask[i] |= dirtyMask[i]")
+                    .endControlFlow()
+                    .endControlFlow();
+        }
+        return MethodSpec.methodBuilder("update")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ClassName.get(getOrigin()), "object")
+                .addParameter(ClassName.get(getOrigin()), "snapshot")
+                .returns(TypeName.INT)
+                .beginControlFlow("if (snapshot == null)")
+                .addStatement("return update(client, object)")
+                .endControlFlow()
+                .addStatement("final long[] mask = new long[$L]", maskLength())
+                .addCode(compare.build())
+                .addCode(pending.build())
+                .addStatement("final $T affectedRows = update(client, object, mask)", TypeName.INT)
+                .beginControlFlow("if (affectedRows > 0)")
+                .addCode(attachIdentityIfEnabled())
+                .addStatement("$T.notifyChange($T.class)",
+                        ClassName.get("droidkit.sqlite", "SQLiteChanges"),
+                        ClassName.get(getOrigin()))
+                .endControlFlow()
+                .addStatement("return affectedRows")
+                .build();
+    }
+
+    private MethodSpec upsert() {
+        return MethodSpec.methodBuilder("save")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ClassName.get(getOrigin()), "object")
+                .addCode(replace())
+                .addStatement("$T.notifyChange($T.class)",
+                        ClassName.get("droidkit.sqlite", "SQLiteChanges"),
+                        ClassName.get(getOrigin()))
+                .build();
+    }
+
+    private MethodSpec upsertAll() {
+        return MethodSpec.methodBuilder("saveAll")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Collection.class), ClassName.get(getOrigin())),
+                        "objects")
+                .addCode(transaction(CodeBlock.builder()
+                        .beginControlFlow("for (final $T object : objects)", ClassName.get(getOrigin()))
+                        .add(replace())
+                        .endControlFlow()
+                        .addStatement("$T.notifyChange($T.class)",
+                                ClassName.get("droidkit.sqlite", "SQLiteChanges"),
+                                ClassName.get(getOrigin()))
+                        .build()))
+                .build();
+    }
+
+    private CodeBlock replace() {
+        return withStatement("STMT_INSERT", CodeBlock.builder()
+                .add(bindColumns(0))
+                .addStatement("stmt.execute()")
+                .build());
+    }
+
+    private MethodSpec removeByKey() {
+        final CodeBlock.Builder binds = CodeBlock.builder();
+        int bindIndex = 0;
+        for (final String fieldName : finderFields(new Finder(mKeyColumns, true))) {
+            mFieldToConversion.get(fieldName).bindToStatement("object." + fieldName, String.valueOf(++bindIndex))
+                    .call(binds);
+        }
         return MethodSpec.methodBuilder("remove")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
                 .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
                 .addParameter(ClassName.get(getOrigin()), "object")
                 .returns(TypeName.INT)
-                .addStatement("$T affectedRows = client.executeUpdateDelete($S, $L)", TypeName.INT,
-                        "DELETE FROM " + mTableName + " WHERE _id = ?;", "object." + getPk())
+                .addStatement("final $T affectedRows", TypeName.INT)
+                .addCode(withStatement("STMT_DELETE", binds
+                        .addStatement("affectedRows = stmt.executeUpdateDelete()")
+                        .build()))
                 .beginControlFlow("if (affectedRows > 0)")
                 .addStatement("$T.notifyChange($T.class)",
-                        ClassName.get("droidkit.sqlite", "SQLiteSchema"),
+                        ClassName.get("droidkit.sqlite", "SQLiteChanges"),
                         ClassName.get(getOrigin()))
                 .endControlFlow()
                 .addStatement("return affectedRows")
                 .build();
     }
 
-    private MethodSpec updateIfActive() {
-        return MethodSpec.methodBuilder("update")
-                .addModifiers(Modifier.STATIC)
-                .addParameter(String.class, "column")
-                .addParameter(Object.class, "value")
-                .addParameter(TypeName.LONG, "rowId")
+    private MethodSpec remove() {
+        return MethodSpec.methodBuilder("remove")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ClassName.get(getOrigin()), "object")
                 .returns(TypeName.INT)
-                .addStatement("$T affectedRows = 0", TypeName.INT)
-                .beginControlFlow("if (rowId > 0 && sClientRef != null)")
-                .addStatement("final $T client = sClientRef.get()", ClassName.get("droidkit.sqlite", "SQLiteClient"))
-                .beginControlFlow("if (client != null)")
-                .addStatement("affectedRows = client.executeUpdateDelete(\"UPDATE $L SET \" + column + \" = ?" +
-                        " WHERE _id = ?;\", value, rowId)", mTableName)
+                .addCode(discardDirtyColumns())
+                .addStatement("final $T affectedRows", TypeName.INT)
+                .addCode(withStatement("STMT_DELETE", CodeBlock.builder()
+                        .addStatement("stmt.bindLong(1, object.$L)", getPk())
+                        .addStatement("affectedRows = stmt.executeUpdateDelete()")
+                        .build()))
                 .beginControlFlow("if (affectedRows > 0)")
+                .addCode(mIdentityMapSize > 0
+                        ? CodeBlock.builder().addStatement("detachIdentity(object.$L)", getPk()).build()
+                        : CodeBlock.builder().build())
                 .addStatement("$T.notifyChange($T.class)",
-                        ClassName.get("droidkit.sqlite", "SQLiteSchema"),
+                        ClassName.get("droidkit.sqlite", "SQLiteChanges"),
                         ClassName.get(getOrigin()))
                 .endControlFlow()
+                .addStatement("return affectedRows")
+                .build();
+    }
+
+    private List<MethodSpec> updateIfActive() {
+        final List<MethodSpec> methods = new ArrayList<>();
+        for (final Map.Entry<String, String> entry : mFieldToColumn.entrySet()) {
+            final CodeBlock.Builder bind = CodeBlock.builder();
+            mFieldToConversion.get(entry.getKey()).bindToStatement("value", "1").call(bind);
+            methods.add(MethodSpec.methodBuilder(columnUpdater(entry.getKey()))
+                    .addModifiers(Modifier.STATIC)
+                    .addParameter(TypeName.get(mFieldToType.get(entry.getKey())), "value")
+                    .addParameter(TypeName.LONG, "rowId")
+                    .returns(TypeName.INT)
+                    .addStatement("$T affectedRows = 0", TypeName.INT)
+                    .beginControlFlow("if (rowId > 0 && sClientRef != null)")
+                    .addStatement("final $T client = sClientRef.get()",
+                            ClassName.get("droidkit.sqlite", "SQLiteClient"))
+                    .beginControlFlow("if (client != null)")
+                    .addCode(withStatement(columnStatement(entry.getValue()), bind
+                            .addStatement("stmt.bindLong(2, rowId)")
+                            .addStatement("affectedRows = stmt.executeUpdateDelete()")
+                            .build()))
+                    .beginControlFlow("if (affectedRows > 0)")
+                    .addStatement("$T.notifyChange($T.class)",
+                            ClassName.get("droidkit.sqlite", "SQLiteChanges"),
+                            ClassName.get(getOrigin()))
+                    .endControlFlow()
+                    .endControlFlow()
+                    .endControlFlow()
+                    .addStatement("return affectedRows")
+                    .build());
+        }
+        return methods;
+    }
+
+    private FieldSpec dirtyObjects() {
+        return FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(getOrigin()),
+                ArrayTypeName.of(TypeName.LONG)), "DIRTY_OBJECTS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T<>()", ClassName.get(IdentityHashMap.class))
+                .build();
+    }
+
+    private FieldSpec flushScheduled() {
+        return FieldSpec.builder(TypeName.BOOLEAN, "sFlushScheduled", Modifier.PRIVATE, Modifier.STATIC).build();
+    }
+
+    private FieldSpec flushExecutor() {
+        return FieldSpec.builder(ClassName.get(Executor.class), "sFlushExecutor",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.VOLATILE)
+                .initializer("$T.SERIAL_EXECUTOR", ClassName.get("android.os", "AsyncTask"))
+                .build();
+    }
+
+    private MethodSpec setFlushExecutor() {
+        return MethodSpec.methodBuilder("setFlushExecutor")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(ClassName.get(Executor.class), "executor")
+                .beginControlFlow("if (executor == null)")
+                .addStatement("throw new $T($S)", ClassName.get(IllegalArgumentException.class),
+                        "executor == null")
+                .endControlFlow()
+                .addStatement("sFlushExecutor = executor")
+                .build();
+    }
+
+    private FieldSpec flushTask() {
+        return FieldSpec.builder(Runnable.class, "FLUSH_TASK", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T()", ClassName.get(getPackageName(), getClassName(), "FlushTask"))
+                .build();
+    }
+
+    private TypeSpec flushTaskType() {
+        return TypeSpec.classBuilder("FlushTask")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(Runnable.class)
+                .addMethod(MethodSpec.methodBuilder("run")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addStatement("flush()")
+                        .build())
+                .build();
+    }
+
+    private MethodSpec markDirty() {
+        return MethodSpec.methodBuilder("markDirty")
+                .addModifiers(Modifier.STATIC)
+                .addParameter(ClassName.get(getOrigin()), "object")
+                .addParameter(TypeName.INT, "index")
+                .beginControlFlow("if (object.$L > 0)", getPk())
+                .beginControlFlow("synchronized (DIRTY_OBJECTS)")
+                .addStatement("long[] mask = DIRTY_OBJECTS.get(object)")
+                .beginControlFlow("if (mask == null)")
+                .addStatement("mask = new long[$L]", maskLength())
+                .addStatement("DIRTY_OBJECTS.put(object, mask)")
+                .endControlFlow()
+                .addStatement("mask[index >> 6] |= 1L << index")
+                .beginControlFlow("if (!sFlushScheduled)")
+                .addStatement("sFlushExecutor.execute(FLUSH_TASK)")
+                .addStatement("sFlushScheduled = true")
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+    private MethodSpec flush() {
+        final TypeName dirtyType = ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(getOrigin()),
+                ArrayTypeName.of(TypeName.LONG));
+        return MethodSpec.methodBuilder("flush")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(TypeName.INT)
+                .addStatement("final $T client = sClientRef == null ? null : sClientRef.get()",
+                        ClassName.get("droidkit.sqlite", "SQLiteClient"))
+                .addStatement("final $T dirtyObjects", dirtyType)
+                .beginControlFlow("synchronized (DIRTY_OBJECTS)")
+                .addStatement("sFlushScheduled = false")
+                .beginControlFlow("if (client == null || DIRTY_OBJECTS.isEmpty())")
+                .addStatement("return 0")
+                .endControlFlow()
+                .addStatement("dirtyObjects = new $T<>(DIRTY_OBJECTS)", ClassName.get(IdentityHashMap.class))
+                .addStatement("DIRTY_OBJECTS.clear()")
+                .endControlFlow()
+                .addStatement("$T affectedRows = 0", TypeName.INT)
+                .addStatement("boolean flushed = false")
+                .beginControlFlow("try")
+                .addCode(transaction(CodeBlock.builder()
+                        .beginControlFlow("for (final $T.Entry<$T, long[]> entry : dirtyObjects.entrySet())",
+                                ClassName.get(Map.class), ClassName.get(getOrigin()))
+                        .addStatement("affectedRows += update(client, entry.getKey(), entry.getValue())")
+                        .endControlFlow()
+                        .beginControlFlow("if (affectedRows > 0)")
+                        .addStatement("$T.notifyChange($T.class)",
+                                ClassName.get("droidkit.sqlite", "SQLiteChanges"),
+                                ClassName.get(getOrigin()))
+                        .endControlFlow()
+                        .build()))
+                .addStatement("flushed = true")
+                .nextControlFlow("finally")
+                .beginControlFlow("if (!flushed)")
+                .beginControlFlow("synchronized (DIRTY_OBJECTS)")
+                .beginControlFlow("for (final $T.Entry<$T, long[]> entry : dirtyObjects.entrySet())",
+                        ClassName.get(Map.class), ClassName.get(getOrigin()))
+                .addStatement("final long[] mask = DIRTY_OBJECTS.get(entry.getKey())")
+                .beginControlFlow("if (mask == null)")
+                .addStatement("DIRTY_OBJECTS.put(entry.getKey(), entry.getValue())")
+                .nextControlFlow("else")
+                .beginControlFlow("for (int i = 0; i < mask.length; ++i)")
+                .addStatement("mask[i] |= entry.getValue()[i]")
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
                 .endControlFlow()
                 .endControlFlow()
                 .addStatement("return affectedRows")
                 .build();
     }
 
+    private MethodSpec updateColumns() {
+        final CodeBlock.Builder columns = CodeBlock.builder();
+        final CodeBlock.Builder binds = CodeBlock.builder();
+        for (final Map.Entry<String, String> entry : mFieldToColumn.entrySet()) {
+            final String statement = columnStatement(entry.getValue());
+            columns.beginControlFlow("if ((mask[$1L >> 6] & (1L << $1L)) != 0)", statement)
+                    .addStatement("sql.append($S)", ", " + entry.getValue() + " = ?")
+                    .endControlFlow();
+            binds.beginControlFlow("if ((mask[$1L >> 6] & (1L << $1L)) != 0)", statement);
+            mFieldToConversion.get(entry.getKey()).bindToStatement("object." + entry.getKey(), "++bindIndex")
+                    .call(binds);
+            binds.endControlFlow();
+        }
+        return MethodSpec.methodBuilder("update")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ClassName.get("droidkit.sqlite", "SQLiteClient"), "client")
+                .addParameter(ClassName.get(getOrigin()), "object")
+                .addParameter(ArrayTypeName.of(TypeName.LONG), "mask")
+                .returns(TypeName.INT)
+                .addStatement("final $T sql = new $T()", ClassName.get(StringBuilder.class),
+                        ClassName.get(StringBuilder.class))
+                .addCode(columns.build())
+                .beginControlFlow("if (sql.length() == 0)")
+                .addStatement("return 0")
+                .endControlFlow()
+                .addStatement("final $T update = $S + sql.substring(2) + $S", ClassName.get(String.class),
+                        "UPDATE " + mTableName + " SET ", " WHERE " + keyPredicate() + ";")
+                .addStatement("final $T stmt = obtainPartialUpdate(client, update)",
+                        ClassName.get("droidkit.sqlite", "SQLiteStmt"))
+                .beginControlFlow("try")
+                .addStatement("$T bindIndex = 0", TypeName.INT)
+                .addCode(binds.build())
+                .addStatement("stmt.bindLong(++bindIndex, object.$L)", getPk())
+                .addStatement("return stmt.executeUpdateDelete()")
+                .nextControlFlow("finally")
+                .addStatement("recyclePartialUpdate(client, update, stmt)")
+                .endControlFlow()
+                .build();
+    }
+
+    private CodeBlock transaction(CodeBlock statements) {
+        final ClassName changes = ClassName.get("droidkit.sqlite", "SQLiteChanges");
+        return CodeBlock.builder()
+                .addStatement("$T.beginTransaction(client)", changes)
+                .beginControlFlow("try")
+                .add(statements)
+                .addStatement("$T.setTransactionSuccessful(client)", changes)
+                .nextControlFlow("finally")
+                .addStatement("$T.endTransaction(client)", changes)
+                .endControlFlow()
+                .build();
+    }
+
+    private FieldSpec identities() {
+        return FieldSpec.builder(ParameterizedTypeName.get(ClassName.get("android.util", "LongSparseArray"),
+                ClassName.bestGuess("Identity")), "IDENTITIES", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T<>($L)", ClassName.get("android.util", "LongSparseArray"), mIdentityMapSize + 1)
+                .build();
+    }
+
+    private FieldSpec identityOrder() {
+        return FieldSpec.builder(ClassName.bestGuess("Identity"), "IDENTITY_ORDER",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new Identity(0, null)")
+                .build();
+    }
+
+    private TypeSpec identityType() {
+        final ClassName identity = ClassName.bestGuess("Identity");
+        return TypeSpec.classBuilder("Identity")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .superclass(ParameterizedTypeName.get(ClassName.get(WeakReference.class), ClassName.get(getOrigin())))
+                .addField(TypeName.LONG, "mRowId", Modifier.FINAL)
+                .addField(identity, "mPrev")
+                .addField(identity, "mNext")
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(TypeName.LONG, "rowId")
+                        .addParameter(ClassName.get(getOrigin()), "object")
+                        .addStatement("super(object)")
+                        .addStatement("mRowId = rowId")
+                        .addStatement("mPrev = this")
+                        .addStatement("mNext = this")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("linkBefore")
+                        .addParameter(identity, "next")
+                        .addStatement("mPrev = next.mPrev")
+                        .addStatement("mNext = next")
+                        .addStatement("next.mPrev.mNext = this")
+                        .addStatement("next.mPrev = this")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("unlink")
+                        .addStatement("mPrev.mNext = mNext")
+                        .addStatement("mNext.mPrev = mPrev")
+                        .addStatement("mPrev = this")
+                        .addStatement("mNext = this")
+                        .build())
+                .build();
+    }
+
+    private MethodSpec identity() {
+        return MethodSpec.methodBuilder("identity")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(TypeName.LONG, "rowId")
+                .returns(ClassName.get(getOrigin()))
+                .beginControlFlow("synchronized (IDENTITIES)")
+                .addStatement("final Identity identity = IDENTITIES.get(rowId)")
+                .beginControlFlow("if (identity == null)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("identity.unlink()")
+                .addStatement("final $T object = identity.get()", ClassName.get(getOrigin()))
+                .beginControlFlow("if (object == null)")
+                .addStatement("IDENTITIES.remove(rowId)")
+                .nextControlFlow("else")
+                .addStatement("identity.linkBefore(IDENTITY_ORDER)")
+                .endControlFlow()
+                .addStatement("return object")
+                .endControlFlow()
+                .build();
+    }
+
+    private MethodSpec attachIdentity() {
+        return MethodSpec.methodBuilder("attachIdentity")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(TypeName.LONG, "rowId")
+                .addParameter(ClassName.get(getOrigin()), "object")
+                .beginControlFlow("synchronized (IDENTITIES)")
+                .addStatement("final Identity previous = IDENTITIES.get(rowId)")
+                .beginControlFlow("if (previous != null)")
+                .addStatement("previous.unlink()")
+                .endControlFlow()
+                .addStatement("final Identity identity = new Identity(rowId, object)")
+                .addStatement("IDENTITIES.put(rowId, identity)")
+                .addStatement("identity.linkBefore(IDENTITY_ORDER)")
+                .beginControlFlow("if (IDENTITIES.size() > $L)", mIdentityMapSize)
+                .addStatement("final Identity eldest = IDENTITY_ORDER.mNext")
+                .addStatement("eldest.unlink()")
+                .addStatement("IDENTITIES.remove(eldest.mRowId)")
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+    private MethodSpec detachIdentity() {
+        return MethodSpec.methodBuilder("detachIdentity")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(TypeName.LONG, "rowId")
+                .beginControlFlow("synchronized (IDENTITIES)")
+                .addStatement("final Identity identity = IDENTITIES.get(rowId)")
+                .beginControlFlow("if (identity != null)")
+                .addStatement("identity.unlink()")
+                .addStatement("IDENTITIES.remove(rowId)")
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+    private CodeBlock attachIdentityIfEnabled() {
+        final CodeBlock.Builder builder = CodeBlock.builder();
+        if (mIdentityMapSize > 0) {
+            builder.addStatement("attachIdentity(object.$L, object)", getPk());
+        }
+        return builder.build();
+    }
+
+    private CodeBlock clearIdentities() {
+        final CodeBlock.Builder builder = CodeBlock.builder();
+        if (mIdentityMapSize > 0) {
+            builder.beginControlFlow("synchronized (IDENTITIES)")
+                    .addStatement("IDENTITIES.clear()")
+                    .addStatement("IDENTITY_ORDER.unlink()")
+                    .endControlFlow();
+        }
+        return builder.build();
+    }
+
+    private int maskLength() {
+        return (STMT_DELETE + mFieldToColumn.size() + 64) >> 6;
+    }
+
+    private CodeBlock discardDirtyColumns() {
+        final CodeBlock.Builder builder = CodeBlock.builder();
+        if (isDirtyTracking()) {
+            builder.beginControlFlow("synchronized (DIRTY_OBJECTS)")
+                    .addStatement("DIRTY_OBJECTS.remove(object)")
+                    .endControlFlow();
+        }
+        return builder.build();
+    }
+
+    private CodeBlock insert() {
+        final ClassName stmt = ClassName.get("droidkit.sqlite", "SQLiteStmt");
+        return CodeBlock.builder()
+                .beginControlFlow("if (object.$L > 0)", getPk())
+                .add(withStatement("STMT_INSERT_WITH_ID", CodeBlock.builder()
+                        .addStatement("stmt.bindLong(1, object.$L)", getPk())
+                        .add(bindColumns(1))
+                        .addStatement("object.$L = stmt.executeInsert()", getPk())
+                        .build()))
+                .nextControlFlow("else")
+                .add(withStatement("STMT_INSERT", CodeBlock.builder()
+                        .add(bindColumns(0))
+                        .addStatement("object.$L = stmt.executeInsert()", getPk())
+                        .build()))
+                .endControlFlow()
+                .add(attachIdentityIfEnabled())
+                .build();
+    }
+
+    private String insertSql(boolean withId) {
+        if (isCompositeKey()) {
+            return "INSERT OR REPLACE INTO " + mTableName + "(" + Strings.join(", ", mFieldToColumn.values()) +
+                    ") VALUES(" + Strings.join(", ", Collections.nCopies(mFieldToColumn.size(), "?")) + ");";
+        }
+        final List<String> columns = new ArrayList<>();
+        if (withId) {
+            columns.add(SQLitePkVisitor.ROWID);
+        }
+        columns.addAll(mFieldToColumn.values());
+        if (columns.isEmpty()) {
+            return "INSERT INTO " + mTableName + " DEFAULT VALUES;";
+        }
+        return String.format(Locale.US, "INSERT INTO %s(%s) VALUES(%s);", mTableName, Strings.join(", ", columns),
+                Strings.join(", ", Collections.nCopies(columns.size(), "?")));
+    }
+
+    private CodeBlock bindColumns(int offset) {
+        final CodeBlock.Builder builder = CodeBlock.builder();
+        int bindIndex = offset;
+        for (final String fieldName : mFieldToColumn.keySet()) {
+            mFieldToConversion.get(fieldName).bindToStatement("object." + fieldName, String.valueOf(++bindIndex))
+                    .call(builder);
+        }
+        return builder.build();
+    }
+
+    private static CodeBlock stringArray(List<String> values) {
+        final CodeBlock.Builder initializer = CodeBlock.builder().add("{");
+        for (final Iterator<String> iterator = values.iterator(); iterator.hasNext(); ) {
+            initializer.add("$S", iterator.next());
+            if (iterator.hasNext()) {
+                initializer.add(", ");
+            }
+        }
+        return initializer.add("}").build();
+    }
+
     private List<MethodSpec> setupRelations() {
         final List<MethodSpec> methods = new ArrayList<>();
         for (final TypeMirror relType : mOneToOneRelations) {
@@ -404,14 +2810,17 @@ public class SQLiteObjectScanner extends ElementScanner {
                     .addStatement("final $T client = sClientRef.get()",
                             ClassName.get("droidkit.sqlite", "SQLiteClient"))
                     .beginControlFlow("if (client != null)")
-                    .addStatement("final long relId = $T$$SQLiteHelper.save(client, object)", ClassName.get(relType))
-                    .addStatement("final int affectedRows = client.executeUpdateDelete($S, relId, rowId)",
-                            String.format(Locale.US, "UPDATE %s SET %s_id = ? WHERE %s_id = ?;",
-                                    relTable, relTypeTable, mTableName))
-                    .beginControlFlow("if (affectedRows == 0)")
-                    .addStatement("client.executeInsert($S, rowId, relId)",
-                            "INSERT INTO " + relTable + " VALUES(?, ?);")
-                    .endControlFlow()
+                    .addCode(transaction(CodeBlock.builder()
+                            .addStatement("final long relId = $T$$SQLiteHelper.save(client, object)",
+                                    ClassName.get(relType))
+                            .addStatement("final int affectedRows = client.executeUpdateDelete($S, relId, rowId)",
+                                    String.format(Locale.US, "UPDATE %s SET %s_id = ? WHERE %s_id = ?;",
+                                            relTable, relTypeTable, mTableName))
+                            .beginControlFlow("if (affectedRows == 0)")
+                            .addStatement("client.executeInsert($S, rowId, relId)",
+                                    "INSERT INTO " + relTable + " VALUES(?, ?);")
+                            .endControlFlow()
+                            .build()))
                     .endControlFlow()
                     .endControlFlow()
                     .build());
@@ -421,14 +2830,18 @@ public class SQLiteObjectScanner extends ElementScanner {
 
     private void attachHelperToProvider(JavaFile javaFile, TypeSpec typeSpec) {
         if (mActiveRecord) {
-            META_BLOCK.addStatement("$T.attachHelper($T.class)",
+            sMetaBlock.addStatement("$T.attachHelper($T.class)",
                     ClassName.get("droidkit.sqlite", "SQLiteProvider"),
                     ClassName.get(javaFile.packageName, typeSpec.name));
         }
     }
 
+    private void releaseStatementsOnClose(JavaFile javaFile, TypeSpec typeSpec) {
+        sReleaseBlock.addStatement("$T.releaseStatements()", ClassName.get(javaFile.packageName, typeSpec.name));
+    }
+
     private void attachTableInfoToSchema(JavaFile javaFile, TypeSpec typeSpec) {
-        META_BLOCK.addStatement("$T.attachTableInfo($T.class, $S, $T.class)",
+        sMetaBlock.addStatement("$T.attachTableInfo($T.class, $S, $T.class)",
                 ClassName.get("droidkit.sqlite", "SQLiteSchema"),
                 ClassName.get(getOrigin()), mTableName,
                 ClassName.get(javaFile.packageName, typeSpec.name));
@@ -449,16 +2862,71 @@ public class SQLiteObjectScanner extends ElementScanner {
 
     }
 
-    private static class ObjectField implements Func1<String, String> {
+    private static class QualifiedColumn implements Func1<String, String> {
+
+        private final String mTableName;
+
+        QualifiedColumn(String tableName) {
+            mTableName = tableName;
+        }
 
         @Override
-        public String call(String field) {
-            return "object." + field;
+        public String call(String column) {
+            return mTableName + "." + column;
         }
 
     }
     //endregion
 
+    private static class RelationField {
+
+        final String mFieldName;
+
+        final TypeMirror mRelType;
+
+        final String mRelTable;
+
+        final Action1<CodeBlock.Builder> mLookup;
+
+        RelationField(String fieldName, TypeMirror relType, String relTable, Action1<CodeBlock.Builder> lookup) {
+            mFieldName = fieldName;
+            mRelType = relType;
+            mRelTable = relTable;
+            mLookup = lookup;
+        }
+
+        String loaderName() {
+            return "load" + SQLiteColumnVisitor.canonicalSetterName(mFieldName, "").substring(3);
+        }
+
+    }
+
+    private static class Finder {
+
+        final List<String> mColumns;
+
+        final boolean mUnique;
+
+        Finder(List<String> columns, boolean unique) {
+            mColumns = columns;
+            mUnique = unique;
+        }
+
+        String sqlName(boolean first) {
+            return (first ? "FIND_FIRST_BY_" : "FIND_BY_") + Strings.join("_AND_", mColumns).toUpperCase(Locale.US);
+        }
+
+        String countName() {
+            return "STMT_COUNT_BY_" + Strings.join("_AND_", mColumns).toUpperCase(Locale.US);
+        }
+
+        String where(boolean first) {
+            return " WHERE " + Strings.transformAndJoin(" AND ", mColumns, new ColumnBinder()) +
+                    (first ? " LIMIT 1" : "");
+        }
+
+    }
+
     //region scanners
     private class FieldScanner extends ElementScanner7<Void, Void> {
 
@@ -467,7 +2935,9 @@ public class SQLiteObjectScanner extends ElementScanner {
             for (final FieldVisitor visitor : FieldVisitor.SUPPORTED) {
                 final Annotation annotation = visitor.getAnnotation(getEnv(), field);
                 if (annotation != null) {
-                    getEnv().<JCTree.JCVariableDecl>getTree(field).mods.flags &= ~Flags.PRIVATE;
+                    if (!mModelOnly) {
+                        getEnv().<JCTree.JCVariableDecl>getTree(field).mods.flags &= ~Flags.PRIVATE;
+                    }
                     visitor.visit(SQLiteObjectScanner.this, getEnv(), field, annotation);
                 }
             }
@@ -30,7 +30,9 @@ class SQLitePkVisitor implements FieldVisitor {
             final String fieldName = field.getSimpleName().toString();
             scanner.setPrimaryKey(fieldName);
             scanner.addColumnDef(ROWID + PRIMARY_KEY + ConflictResolution.get(pk.value()));
-            scanner.instantiateAction(new LongConversion().convertToJavaType(fieldName, ROWID, field.asType()));
+            final int columnIndex = scanner.columnIndex(ROWID);
+            scanner.instantiateAction(columnIndex, new LongConversion().convertToJavaType(fieldName, columnIndex,
+                    field.asType()));
         } else {
             env.printMessage(Diagnostic.Kind.ERROR, field, "SQLitePk must be long");
         }
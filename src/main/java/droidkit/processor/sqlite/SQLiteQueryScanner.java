@@ -0,0 +1,487 @@
+package droidkit.processor.sqlite;
+
+import com.squareup.javapoet.*;
+import droidkit.annotation.SQLiteQuery;
+import droidkit.processor.ElementScanner;
+import droidkit.processor.ProcessingEnv;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.ElementScanner7;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Daniel Serdyukov
+ */
+public class SQLiteQueryScanner extends ElementScanner {
+
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Pattern TABLE = Pattern.compile("\\b(?:FROM|JOIN|INTO|UPDATE)\\s+([A-Za-z_]\\w*)",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern COLUMN = Pattern.compile(
+            "\\b([A-Za-z_]\\w*)\\s*(?:=|<>|!=|<=|>=|<|>|\\b(?:IS|IN|LIKE|GLOB|BETWEEN)\\b)",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern PARAM_COLUMN = Pattern.compile(
+            "\\b([A-Za-z_]\\w*)\\s*(?:=|==|<>|!=|<=|>=|<|>|\\b(?:IS(?:\\s+NOT)?|LIKE|GLOB)\\b)\\s*\\?",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "and", "or", "not", "where", "set", "on", "when", "then", "else", "case", "having", "null"
+    ));
+
+    private static final ClassName SQLITE_CLIENT = ClassName.get("droidkit.sqlite", "SQLiteClient");
+
+    private static final ClassName CURSOR = ClassName.get("android.database", "Cursor");
+
+    private static final ClassName SQLITE_STMT = ClassName.get("droidkit.sqlite", "SQLiteStmt");
+
+    private static final ClassName META_DATA = ClassName.get("droidkit.sqlite", "SQLiteMetaData");
+
+    private final List<String> mStatements = new ArrayList<>();
+
+    private final List<MethodSpec> mMethods = new ArrayList<>();
+
+    private final Map<String, FieldSpec> mLookupFields = new LinkedHashMap<>();
+
+    private Set<TypeElement> mTableCandidates;
+
+    public SQLiteQueryScanner(ProcessingEnv env, TypeElement originType) {
+        super(env, originType);
+    }
+
+    @Override
+    protected void scan() {
+        if (ElementKind.INTERFACE != getOrigin().getKind()) {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, getOrigin(), "@SQLiteQuery expected on interface methods");
+            return;
+        }
+        getOrigin().accept(new ElementScanner7<Void, Void>() {
+            @Override
+            public Void visitExecutable(ExecutableElement method, Void aVoid) {
+                final SQLiteQuery query = method.getAnnotation(SQLiteQuery.class);
+                if (query == null) {
+                    getEnv().printMessage(Diagnostic.Kind.ERROR, method, "Expected @SQLiteQuery annotation");
+                } else {
+                    visitQuery(method, query.value().trim());
+                }
+                return aVoid;
+            }
+        }, null);
+        brewJava();
+    }
+
+    private void visitQuery(ExecutableElement method, String sql) {
+        final String stripped = LITERAL.matcher(sql).replaceAll("''");
+        final List<? extends VariableElement> params = method.getParameters();
+        final int placeholders = stripped.length() - stripped.replace("?", "").length();
+        if (placeholders != params.size()) {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, method, "Expected %d parameters, found %d",
+                    placeholders, params.size());
+            return;
+        }
+        final List<SQLiteObjectScanner> tables = resolveTables(method, stripped);
+        if (tables == null || !validateColumns(method, stripped, tables)) {
+            return;
+        }
+        final List<String> paramColumns = paramColumns(stripped);
+        final List<TypeConversion> conversions = new ArrayList<>();
+        for (int i = 0; i < params.size(); ++i) {
+            final TypeConversion conversion = getTypeConversion(params.get(i), paramColumns.get(i), tables);
+            if (conversion == null) {
+                return;
+            }
+            conversions.add(conversion);
+        }
+        final String verb = stripped.split("\\s+", 2)[0].toUpperCase(Locale.US);
+        final int index = mStatements.size();
+        final MethodSpec methodSpec;
+        if ("SELECT".equals(verb) || "WITH".equals(verb)) {
+            methodSpec = select(method, index, conversions);
+        } else if ("INSERT".equals(verb) || "REPLACE".equals(verb)) {
+            methodSpec = write(method, index, conversions, tables, true);
+        } else if ("UPDATE".equals(verb) || "DELETE".equals(verb)) {
+            methodSpec = write(method, index, conversions, tables, false);
+        } else {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, method, "Unsupported statement: %s", verb);
+            return;
+        }
+        if (methodSpec != null) {
+            mStatements.add(sql);
+            mMethods.add(methodSpec);
+        }
+    }
+
+    private List<SQLiteObjectScanner> resolveTables(ExecutableElement method, String sql) {
+        final List<SQLiteObjectScanner> tables = new ArrayList<>();
+        final Matcher matcher = TABLE.matcher(sql);
+        while (matcher.find()) {
+            final SQLiteObjectScanner table = SQLiteObjectScanner.forTable(getEnv(), matcher.group(1),
+                    tableCandidates());
+            if (table == null) {
+                getEnv().printMessage(Diagnostic.Kind.ERROR, method, "Unknown table %s", matcher.group(1));
+                return null;
+            }
+            tables.add(table);
+        }
+        if (tables.isEmpty()) {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, method, "Query does not reference any table");
+            return null;
+        }
+        return tables;
+    }
+
+    /**
+     * Entities this interface can see: types of its method signatures, its imports and its package.
+     */
+    private Set<TypeElement> tableCandidates() {
+        if (mTableCandidates == null) {
+            mTableCandidates = new LinkedHashSet<>();
+            for (final ExecutableElement method : ElementFilter.methodsIn(getOrigin().getEnclosedElements())) {
+                addTableCandidates(method.getReturnType());
+                for (final VariableElement param : method.getParameters()) {
+                    addTableCandidates(param.asType());
+                }
+            }
+            for (final String name : getEnv().getImports(getOrigin())) {
+                if (name.endsWith(".*")) {
+                    final PackageElement pkg = getEnv().asPackage(name.substring(0, name.length() - 2));
+                    if (pkg != null) {
+                        mTableCandidates.addAll(ElementFilter.typesIn(pkg.getEnclosedElements()));
+                    }
+                } else {
+                    final TypeElement type = getEnv().asElement(name);
+                    if (type != null) {
+                        mTableCandidates.add(type);
+                    }
+                }
+            }
+            mTableCandidates.addAll(ElementFilter.typesIn(getOrigin().getEnclosingElement().getEnclosedElements()));
+        }
+        return mTableCandidates;
+    }
+
+    private void addTableCandidates(TypeMirror type) {
+        if (TypeKind.DECLARED == type.getKind()) {
+            mTableCandidates.add((TypeElement) ((DeclaredType) type).asElement());
+            for (final TypeMirror typeArg : ((DeclaredType) type).getTypeArguments()) {
+                addTableCandidates(typeArg);
+            }
+        }
+    }
+
+    private boolean validateColumns(ExecutableElement method, String sql, List<SQLiteObjectScanner> tables) {
+        final Set<String> known = new HashSet<>(KEYWORDS);
+        for (final SQLiteObjectScanner table : tables) {
+            known.add(table.getTableName().toLowerCase(Locale.US));
+            for (final String column : table.getColumns()) {
+                known.add(column.toLowerCase(Locale.US));
+            }
+        }
+        final Matcher matcher = COLUMN.matcher(sql);
+        while (matcher.find()) {
+            if (!known.contains(matcher.group(1).toLowerCase(Locale.US))) {
+                getEnv().printMessage(Diagnostic.Kind.ERROR, method, "Unknown column %s", matcher.group(1));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> paramColumns(String sql) {
+        final Map<Integer, String> columns = new HashMap<>();
+        final Matcher matcher = PARAM_COLUMN.matcher(sql);
+        while (matcher.find()) {
+            columns.put(matcher.end() - 1, matcher.group(1));
+        }
+        final List<String> paramColumns = new ArrayList<>();
+        for (int i = sql.indexOf('?'); i >= 0; i = sql.indexOf('?', i + 1)) {
+            paramColumns.add(columns.get(i));
+        }
+        return paramColumns;
+    }
+
+    private TypeConversion getTypeConversion(VariableElement param, String column,
+                                             List<SQLiteObjectScanner> tables) {
+        if (getEnv().isTypeOfKind(ElementKind.ENUM, param.asType())) {
+            final ClassName enumType = ClassName.get((TypeElement) getEnv().asElement(param.asType()));
+            for (final SQLiteObjectScanner table : tables) {
+                final TypeConversion conversion = column == null ? null : table.getColumnConversion(column);
+                if (conversion instanceof IntEnumConversion) {
+                    return intEnumConversion(param, table, column, (IntEnumConversion) conversion, enumType);
+                } else if (conversion != null) {
+                    return getTypeConversion(param);
+                }
+            }
+            for (final SQLiteObjectScanner table : tables) {
+                for (final TypeConversion conversion : table.getColumnConversions()) {
+                    if (conversion instanceof IntEnumConversion
+                            && enumType.equals(((IntEnumConversion) conversion).getEnumType())) {
+                        getEnv().printMessage(Diagnostic.Kind.ERROR, param, "%s is stored as INTEGER, compare " +
+                                "the parameter directly with its column", enumType.simpleName());
+                        return null;
+                    }
+                }
+            }
+        }
+        return getTypeConversion(param);
+    }
+
+    private TypeConversion intEnumConversion(VariableElement param, SQLiteObjectScanner table, String column,
+                                             IntEnumConversion conversion, ClassName enumType) {
+        if (!enumType.equals(conversion.getEnumType())) {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, param, "Column %s stores %s, not %s", column,
+                    conversion.getEnumType().simpleName(), enumType.simpleName());
+            return null;
+        }
+        final IntEnumConversion local = conversion.withLookupPrefix(table.getTableName() + "_" + column);
+        for (final FieldSpec field : local.bindFields()) {
+            mLookupFields.put(field.name, field);
+        }
+        return local;
+    }
+
+    private TypeConversion getTypeConversion(VariableElement param) {
+        for (final TypeConversion conversion : TypeConversion.SUPPORTED) {
+            if (conversion.isAcceptable(getEnv(), param)) {
+                return conversion;
+            }
+        }
+        getEnv().printMessage(Diagnostic.Kind.ERROR, param, "Unsupported java -> sqlite type conversion");
+        return null;
+    }
+
+    private MethodSpec select(ExecutableElement method, int index, List<TypeConversion> conversions) {
+        final TypeMirror returnType = method.getReturnType();
+        final MethodSpec.Builder builder = overriding(method);
+        if (TypeKind.LONG == returnType.getKind()) {
+            return builder.addCode(simpleQuery(method, index, conversions, "return stmt.simpleQueryForLong()"))
+                    .build();
+        } else if (TypeKind.INT == returnType.getKind()) {
+            return builder.addCode(simpleQuery(method, index, conversions, "return (int) stmt.simpleQueryForLong()"))
+                    .build();
+        } else if (TypeKind.BOOLEAN == returnType.getKind()) {
+            return builder.addCode(simpleQuery(method, index, conversions, "return stmt.simpleQueryForLong() != 0"))
+                    .build();
+        } else if (TypeKind.DECLARED == returnType.getKind() && getEnv().isSubtype(returnType, String.class)) {
+            return builder.addCode(simpleQuery(method, index, conversions, "return stmt.simpleQueryForString()"))
+                    .build();
+        }
+        final CodeBlock args = queryArgs(method, index, conversions);
+        final SQLiteObjectScanner listOf = forListOf(returnType);
+        if (listOf != null) {
+            return builder.addStatement("final $T cursor = mClient.query($L)", CURSOR, args)
+                    .beginControlFlow("try")
+                    .addStatement("return $T.instantiateAll(mClient, cursor)", listOf.getHelperType())
+                    .nextControlFlow("finally")
+                    .addStatement("cursor.close()")
+                    .endControlFlow()
+                    .build();
+        }
+        final SQLiteObjectScanner single = SQLiteObjectScanner.forType(getEnv(), returnType);
+        if (single != null) {
+            final TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), single.getObjectType());
+            return builder.addStatement("final $T cursor = mClient.query($L)", CURSOR, args)
+                    .beginControlFlow("try")
+                    .addStatement("final $T objects = $T.instantiateAll(mClient, cursor)", listType,
+                            single.getHelperType())
+                    .addStatement("return objects.isEmpty() ? null : objects.get(0)")
+                    .nextControlFlow("finally")
+                    .addStatement("cursor.close()")
+                    .endControlFlow()
+                    .build();
+        }
+        getEnv().printMessage(Diagnostic.Kind.ERROR, method, "Unsupported return type %s", returnType);
+        return null;
+    }
+
+    private MethodSpec write(ExecutableElement method, int index, List<TypeConversion> conversions,
+                             List<SQLiteObjectScanner> tables, boolean insert) {
+        final TypeKind returnKind = method.getReturnType().getKind();
+        final String execute = insert ? "stmt.executeInsert()" : "stmt.executeUpdateDelete()";
+        final TypeName resultType = insert ? TypeName.LONG : TypeName.INT;
+        final CodeBlock.Builder body = CodeBlock.builder();
+        if (TypeKind.VOID == returnKind) {
+            body.add(simpleQuery(method, index, conversions, execute));
+        } else if ((insert ? TypeKind.LONG : TypeKind.INT) == returnKind) {
+            body.addStatement("final $T result", resultType)
+                    .add(simpleQuery(method, index, conversions, "result = " + execute));
+        } else {
+            getEnv().printMessage(Diagnostic.Kind.ERROR, method, "Expected void or %s return type", resultType);
+            return null;
+        }
+        final Set<ClassName> changed = new LinkedHashSet<>();
+        for (final SQLiteObjectScanner table : tables) {
+            if (changed.add(table.getObjectType())) {
+                body.addStatement("$T.notifyChange($T.class)", ClassName.get("droidkit.sqlite", "SQLiteChanges"),
+                        table.getObjectType());
+            }
+        }
+        if (TypeKind.VOID != returnKind) {
+            body.addStatement("return result");
+        }
+        return overriding(method)
+                .addCode(body.build())
+                .build();
+    }
+
+    private MethodSpec.Builder overriding(ExecutableElement method) {
+        final MethodSpec.Builder builder = MethodSpec.methodBuilder(method.getSimpleName().toString())
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.get(method.getReturnType()));
+        for (final VariableElement param : method.getParameters()) {
+            builder.addParameter(TypeName.get(param.asType()), param.getSimpleName().toString());
+        }
+        for (final TypeMirror thrownType : method.getThrownTypes()) {
+            builder.addException(TypeName.get(thrownType));
+        }
+        return builder;
+    }
+
+    private CodeBlock simpleQuery(ExecutableElement method, int index, List<TypeConversion> conversions,
+                                  String statement) {
+        final CodeBlock.Builder builder = CodeBlock.builder()
+                .addStatement("final $T stmt = obtainStatement($L)", SQLITE_STMT, index)
+                .beginControlFlow("try");
+        int bindIndex = 0;
+        for (final VariableElement param : method.getParameters()) {
+            conversions.get(bindIndex).bindToStatement(param.getSimpleName().toString(), String.valueOf(++bindIndex))
+                    .call(builder);
+        }
+        return builder.addStatement(statement)
+                .nextControlFlow("finally")
+                .addStatement("recycleStatement($L, stmt)", index)
+                .endControlFlow()
+                .build();
+    }
+
+    private CodeBlock queryArgs(ExecutableElement method, int index, List<TypeConversion> conversions) {
+        final CodeBlock.Builder builder = CodeBlock.builder().add("STATEMENTS[$L]", index);
+        int argIndex = 0;
+        for (final VariableElement param : method.getParameters()) {
+            builder.add(", $L", conversions.get(argIndex++).bindArgument(param.getSimpleName().toString()));
+        }
+        return builder.build();
+    }
+
+    private SQLiteObjectScanner forListOf(TypeMirror type) {
+        if (TypeKind.DECLARED == type.getKind()) {
+            final DeclaredType declaredType = (DeclaredType) type;
+            if (List.class.getName().equals(declaredType.asElement().toString())
+                    && declaredType.getTypeArguments().size() == 1) {
+                return SQLiteObjectScanner.forType(getEnv(), declaredType.getTypeArguments().get(0));
+            }
+        }
+        return null;
+    }
+
+    private void brewJava() {
+        final CodeBlock.Builder statements = CodeBlock.builder().add("{");
+        for (final Iterator<String> iterator = mStatements.iterator(); iterator.hasNext(); ) {
+            statements.add("$S", iterator.next());
+            if (iterator.hasNext()) {
+                statements.add(", ");
+            }
+        }
+        final TypeSpec typeSpec = TypeSpec.classBuilder(getOrigin().getSimpleName() + "$Impl")
+                .addModifiers(Modifier.PUBLIC)
+                .addSuperinterface(ClassName.get(getOrigin()))
+                .addSuperinterface(META_DATA.nestedClass("StatementCache"))
+                .addField(FieldSpec.builder(String[].class, "STATEMENTS", Modifier.PRIVATE, Modifier.STATIC,
+                        Modifier.FINAL)
+                        .initializer(statements.add("}").build())
+                        .build())
+                .addFields(mLookupFields.values())
+                .addField(SQLITE_CLIENT, "mClient", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(ArrayTypeName.of(SQLITE_STMT), "mStatementCache",
+                        Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T[STATEMENTS.length]", SQLITE_STMT)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(SQLITE_CLIENT, "client")
+                        .addStatement("mClient = client")
+                        .addStatement("$T.attachStatementCache(this)", META_DATA)
+                        .build())
+                .addMethods(mMethods)
+                .addMethod(obtainStatement())
+                .addMethod(recycleStatement())
+                .addMethod(releaseStatements())
+                .addOriginatingElement(getOrigin())
+                .build();
+        final JavaFile javaFile = JavaFile.builder(getOrigin().getEnclosingElement().toString(), typeSpec)
+                .addFileComment(AUTO_GENERATED_FILE)
+                .build();
+        try {
+            final JavaFileObject sourceFile = getEnv().createSourceFile(
+                    javaFile.packageName + "." + typeSpec.name, getOrigin());
+            try (final Writer writer = new BufferedWriter(sourceFile.openWriter())) {
+                javaFile.writeTo(writer);
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().throwing(SQLiteQueryScanner.class.getName(), "brewJava", e);
+        }
+    }
+
+    private MethodSpec obtainStatement() {
+        return MethodSpec.methodBuilder("obtainStatement")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(TypeName.INT, "index")
+                .returns(SQLITE_STMT)
+                .beginControlFlow("synchronized (mStatementCache)")
+                .addStatement("final $T stmt = mStatementCache[index]", SQLITE_STMT)
+                .beginControlFlow("if (stmt != null)")
+                .addStatement("mStatementCache[index] = null")
+                .addStatement("return stmt")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return mClient.compileStatement(STATEMENTS[index])")
+                .build();
+    }
+
+    private MethodSpec recycleStatement() {
+        return MethodSpec.methodBuilder("recycleStatement")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(TypeName.INT, "index")
+                .addParameter(SQLITE_STMT, "stmt")
+                .beginControlFlow("synchronized (mStatementCache)")
+                .beginControlFlow("if (mStatementCache[index] == null)")
+                .addStatement("mStatementCache[index] = stmt")
+                .addStatement("return")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("stmt.close()")
+                .build();
+    }
+
+    private MethodSpec releaseStatements() {
+        return MethodSpec.methodBuilder("releaseStatements")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .beginControlFlow("synchronized (mStatementCache)")
+                .beginControlFlow("for (int i = 0; i < mStatementCache.length; ++i)")
+                .addStatement("final $T stmt = mStatementCache[i]", SQLITE_STMT)
+                .beginControlFlow("if (stmt != null)")
+                .addStatement("stmt.close()")
+                .addStatement("mStatementCache[i] = null")
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+}
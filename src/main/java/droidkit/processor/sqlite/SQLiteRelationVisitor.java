@@ -1,7 +1,6 @@
 package droidkit.processor.sqlite;
 
-import com.squareup.javapoet.ClassName;
-import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.*;
 import droidkit.annotation.SQLiteObject;
 import droidkit.annotation.SQLiteRelation;
 import droidkit.processor.ProcessingEnv;
@@ -9,6 +8,7 @@ import droidkit.processor.Strings;
 import rx.functions.*;
 
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.Name;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
@@ -18,6 +18,8 @@ import javax.lang.model.util.SimpleElementVisitor7;
 import javax.lang.model.util.SimpleTypeVisitor7;
 import javax.tools.Diagnostic;
 import java.lang.annotation.Annotation;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
@@ -42,7 +44,7 @@ class SQLiteRelationVisitor implements FieldVisitor {
                 if (t.getTypeArguments().isEmpty()) {
                     return t.asElement().accept(new OneToOneVisitor(aRel.setter()), null);
                 } else if (Objects.equals(List.class.getName(), t.asElement().toString())) {
-                    return t.getTypeArguments().get(0).accept(new OneToManyVisitor(), null);
+                    return t.getTypeArguments().get(0).accept(new OneToManyVisitor(aRel.lazy()), null);
                 }
                 return new UnsupportedRelation();
             }
@@ -91,14 +93,18 @@ class SQLiteRelationVisitor implements FieldVisitor {
         @Override
         public String call(final SQLiteObjectScanner scanner, final ProcessingEnv env, final VariableElement field) {
             final String relTable = scanner.getTableName() + "_" + mRelTypeTable;
-            final String relQuery = String.format(Locale.US, "SELECT %1$s.* FROM %1$s, %3$s" +
+            final String relQuery = String.format(Locale.US, " FROM %1$s, %3$s" +
                             " WHERE %1$s._id=%3$s.%1$s_id" +
                             " AND %3$s.%2$s_id = ?;",
                     mRelTypeTable, scanner.getTableName(), relTable);
             final String fieldName = field.getSimpleName().toString();
-            scanner.instantiateAction(new OneToOneRelationInstantiateFunc()
-                    .call(field.getSimpleName(), mRelType, relQuery));
-            scanner.saveAction(new OneToOneRelationSaveFunc().call(field.getSimpleName(), mRelType, relTable,
+            scanner.joinRelation(fieldName, mRelType, relTable, new OneToOneRelationInstantiateFunc()
+                    .call(field.getSimpleName(), mRelType, relQuery, scanner.getPrimaryKey()));
+            final String link = scanner.relationStatement("STMT_LINK_" + relTable.toUpperCase(Locale.US),
+                    String.format(Locale.US, "INSERT INTO %s VALUES(?, ?);", relTable));
+            final String unlink = scanner.relationStatement("STMT_UNLINK_" + relTable.toUpperCase(Locale.US),
+                    String.format(Locale.US, "DELETE FROM %s WHERE %s_id = ?;", relTable, scanner.getTableName()));
+            scanner.saveAction(new OneToOneRelationSaveFunc().call(field.getSimpleName(), mRelType, link, unlink,
                     scanner.getPrimaryKey()));
             scanner.oneToOneRelation(mRelType);
             scanner.setterAction(SQLiteColumnVisitor.canonicalSetterName(fieldName, mSetterName),
@@ -123,22 +129,40 @@ class SQLiteRelationVisitor implements FieldVisitor {
 
         private final String mRelTypeTable;
 
-        public OneToManyRelation(TypeMirror relType, String relTypeTable) {
+        private final boolean mLazy;
+
+        public OneToManyRelation(TypeMirror relType, String relTypeTable, boolean lazy) {
             mRelType = relType;
             mRelTypeTable = relTypeTable;
+            mLazy = lazy;
         }
 
         @Override
         public String call(final SQLiteObjectScanner scanner, ProcessingEnv env, final VariableElement field) {
             final String relTable = scanner.getTableName() + "_" + mRelTypeTable;
-            final String relQuery = String.format(Locale.US, "SELECT %1$s.* FROM %1$s, %3$s" +
+            final String relQuery = String.format(Locale.US, " FROM %1$s, %3$s" +
                             " WHERE %1$s._id=%3$s.%1$s_id" +
                             " AND %3$s.%2$s_id = ?;",
                     mRelTypeTable, scanner.getTableName(), relTable);
-            scanner.instantiateAction(new OneToManyRelationInstantiateFunc()
-                    .call(field.getSimpleName(), mRelType, relQuery));
-            scanner.saveAction(new OneToManyRelationSaveFunc()
-                    .call(field.getSimpleName(), mRelType, relTable, relQuery, scanner.getPrimaryKey()));
+            final String link = scanner.relationStatement("STMT_LINK_" + relTable.toUpperCase(Locale.US),
+                    String.format(Locale.US, "INSERT INTO %s VALUES(?, ?);", relTable));
+            final Action1<CodeBlock.Builder> saveAction = new OneToManyRelationSaveFunc()
+                    .call(field.getSimpleName(), mRelType, scanner.getTableName(), mRelTypeTable, link,
+                            scanner.getPrimaryKey());
+            if (mLazy) {
+                final ClassName lazyType = ClassName.get(scanner.getPackageName(), scanner.getClassName(),
+                        "Lazy" + SQLiteColumnVisitor.canonicalSetterName(field.getSimpleName().toString(), "")
+                                .substring(3));
+                scanner.nestedType(new LazyListTypeFunc().call(lazyType, mRelType, relQuery));
+                scanner.instantiateAction(new LazyRelationInstantiateFunc()
+                        .call(field.getSimpleName(), lazyType, scanner.getPrimaryKey()));
+                scanner.saveAction(new LazyRelationSaveFunc().call(field.getSimpleName(), lazyType, saveAction));
+            } else {
+                scanner.listRelation(field.getSimpleName().toString(), mRelType, relTable,
+                        new OneToManyRelationInstantiateFunc()
+                                .call(field.getSimpleName(), mRelType, relQuery, scanner.getPrimaryKey()));
+                scanner.saveAction(saveAction);
+            }
             return mRelTypeTable;
         }
 
@@ -165,7 +189,7 @@ class SQLiteRelationVisitor implements FieldVisitor {
         @Override
         public Relation visitType(TypeElement e, Void aVoid) {
             final SQLiteObject annotation = e.getAnnotation(SQLiteObject.class);
-            if (annotation == null) {
+            if (annotation == null || annotation.primaryKey().length > 0) {
                 return new UnsupportedRelation();
             } else {
                 return new OneToOneRelation(e.asType(), annotation.value(), mSetterName);
@@ -174,31 +198,39 @@ class SQLiteRelationVisitor implements FieldVisitor {
     }
 
     private static class OneToManyVisitor extends SimpleTypeVisitor7<Relation, Void> {
+
+        private final boolean mLazy;
+
+        public OneToManyVisitor(boolean lazy) {
+            mLazy = lazy;
+        }
+
         @Override
         public Relation visitDeclared(DeclaredType t, Void aVoid) {
             final SQLiteObject annotation = t.asElement().getAnnotation(SQLiteObject.class);
-            if (annotation == null) {
+            if (annotation == null || annotation.primaryKey().length > 0) {
                 return new UnsupportedRelation();
             } else {
-                return new OneToManyRelation(t, annotation.value());
+                return new OneToManyRelation(t, annotation.value(), mLazy);
             }
         }
     }
 
     private static class OneToOneRelationInstantiateFunc
-            implements Func3<Name, TypeMirror, String, Action1<CodeBlock.Builder>> {
+            implements Func4<Name, TypeMirror, String, Func0<String>, Action1<CodeBlock.Builder>> {
 
         @Override
-        public Action1<CodeBlock.Builder> call(final Name fieldName, final TypeMirror relType, final String query) {
+        public Action1<CodeBlock.Builder> call(final Name fieldName, final TypeMirror relType, final String query,
+                                               final Func0<String> primaryKey) {
             return new Action1<CodeBlock.Builder>() {
                 @Override
                 public void call(CodeBlock.Builder builder) {
-                    builder.addStatement("object.$L = $T.getFirst($T.rawQuery(" +
-                                    "$T.class, $S, $T.getLong(cursor, $S)), null)",
+                    builder.addStatement("object.$L = $T.getFirst($T.rawQuery($T.class, " +
+                                    "\"SELECT \" + $T.QUALIFIED_COLUMNS + $S, object.$L), null)",
                             fieldName, ClassName.get("droidkit.util", "Lists"),
                             ClassName.get("droidkit.sqlite", "SQLite"),
-                            ClassName.get(relType), query,
-                            ClassName.get("droidkit.util", "Cursors"), "_id");
+                            ClassName.get(relType), ClassName.bestGuess(relType.toString() + "$SQLiteHelper"),
+                            query, primaryKey.call());
                 }
             };
         }
@@ -208,19 +240,27 @@ class SQLiteRelationVisitor implements FieldVisitor {
 
     //region functions
     private static class OneToOneRelationSaveFunc
-            implements Func4<Name, TypeMirror, String, Func0<String>, Action1<CodeBlock.Builder>> {
+            implements Func5<Name, TypeMirror, String, String, Func0<String>, Action1<CodeBlock.Builder>> {
 
         @Override
         public Action1<CodeBlock.Builder> call(final Name fieldName, final TypeMirror relType,
-                                               final String relTable, final Func0<String> primaryKey) {
+                                               final String link, final String unlink,
+                                               final Func0<String> primaryKey) {
             return new Action1<CodeBlock.Builder>() {
                 @Override
                 public void call(CodeBlock.Builder builder) {
                     builder.beginControlFlow("if(object.$L != null)", fieldName);
-                    builder.addStatement("final long relId = $T.save(client, object.$L)",
+                    builder.addStatement("final long relId = $T.save(client, object.$L, saved)",
                             ClassName.bestGuess(relType.toString() + "$SQLiteHelper"), fieldName);
-                    builder.addStatement("client.executeInsert($S, object.$L, relId)", String.format(Locale.US,
-                            "INSERT INTO %s VALUES(? , ?);", relTable), primaryKey.call());
+                    builder.add(SQLiteObjectScanner.withStatement("unlinkStmt", unlink, CodeBlock.builder()
+                            .addStatement("unlinkStmt.bindLong(1, object.$L)", primaryKey.call())
+                            .addStatement("unlinkStmt.executeUpdateDelete()")
+                            .build()));
+                    builder.add(SQLiteObjectScanner.withStatement("linkStmt", link, CodeBlock.builder()
+                            .addStatement("linkStmt.bindLong(1, object.$L)", primaryKey.call())
+                            .addStatement("linkStmt.bindLong(2, relId)")
+                            .addStatement("linkStmt.executeInsert()")
+                            .build()));
                     builder.endControlFlow();
                 }
             };
@@ -229,16 +269,18 @@ class SQLiteRelationVisitor implements FieldVisitor {
     }
 
     private static class OneToManyRelationInstantiateFunc
-            implements Func3<Name, TypeMirror, String, Action1<CodeBlock.Builder>> {
+            implements Func4<Name, TypeMirror, String, Func0<String>, Action1<CodeBlock.Builder>> {
 
         @Override
-        public Action1<CodeBlock.Builder> call(final Name fieldName, final TypeMirror relType, final String query) {
+        public Action1<CodeBlock.Builder> call(final Name fieldName, final TypeMirror relType, final String query,
+                                               final Func0<String> primaryKey) {
             return new Action1<CodeBlock.Builder>() {
                 @Override
                 public void call(CodeBlock.Builder builder) {
-                    builder.addStatement("object.$L = $T.rawQuery($T.class, $S, $T.getLong(cursor, $S))",
-                            fieldName, ClassName.get("droidkit.sqlite", "SQLite"),
-                            ClassName.get(relType), query, ClassName.get("droidkit.util", "Cursors"), "_id");
+                    builder.addStatement("object.$L = $T.rawQuery($T.class, \"SELECT \" + $T.QUALIFIED_COLUMNS + $S, " +
+                                    "object.$L)", fieldName, ClassName.get("droidkit.sqlite", "SQLite"),
+                            ClassName.get(relType), ClassName.bestGuess(relType.toString() + "$SQLiteHelper"),
+                            query, primaryKey.call());
                 }
             };
         }
@@ -246,32 +288,198 @@ class SQLiteRelationVisitor implements FieldVisitor {
     }
 
     private static class OneToManyRelationSaveFunc
-            implements Func5<Name, TypeMirror, String, String, Func0<String>, Action1<CodeBlock.Builder>> {
+            implements Func6<Name, TypeMirror, String, String, String, Func0<String>, Action1<CodeBlock.Builder>> {
 
         @Override
         public Action1<CodeBlock.Builder> call(final Name fieldName, final TypeMirror relType,
-                                               final String relTable, final String query,
+                                               final String table, final String relTypeTable, final String link,
                                                final Func0<String> primaryKey) {
+            final String relTable = table + "_" + relTypeTable;
             return new Action1<CodeBlock.Builder>() {
                 @Override
                 public void call(CodeBlock.Builder builder) {
                     builder.beginControlFlow("if(object.$L != null)", fieldName);
+                    // save children before reading links: re-saving a child replaces its row and the link cascades
+                    builder.addStatement("final long[] relIds = new long[object.$L.size()]", fieldName);
+                    builder.addStatement("int relCount = 0");
                     builder.beginControlFlow("for (final $T relEntry : object.$L)",
                             ClassName.get(relType),
                             fieldName);
-                    builder.addStatement("final long relId = $T.save(client, relEntry)",
+                    builder.addStatement("relIds[relCount++] = $T.save(client, relEntry, saved)",
                             ClassName.bestGuess(relType.toString() + "$SQLiteHelper"));
-                    builder.addStatement("client.executeInsert($S, object.$L, relId)", String.format(Locale.US,
-                            "INSERT INTO %s VALUES(? , ?);", relTable), primaryKey.call());
                     builder.endControlFlow();
-                    builder.addStatement("object.$L = $T.rawQuery($T.class, $S, object.$L)",
-                            fieldName, ClassName.get("droidkit.sqlite", "SQLite"),
-                            ClassName.get(relType), query, primaryKey.call());
+                    builder.addStatement("final long[] linkedIds");
+                    builder.addStatement("final $T linked = client.query($S, object.$L)",
+                            ClassName.get("android.database", "Cursor"),
+                            String.format(Locale.US, "SELECT %3$s_id FROM %1$s WHERE %2$s_id = ?;",
+                                    relTable, table, relTypeTable), primaryKey.call());
+                    builder.beginControlFlow("try");
+                    builder.addStatement("linkedIds = new long[linked.getCount()]");
+                    builder.beginControlFlow("for (int i = 0; linked.moveToNext(); ++i)");
+                    builder.addStatement("linkedIds[i] = linked.getLong(0)");
+                    builder.endControlFlow();
+                    builder.nextControlFlow("finally");
+                    builder.addStatement("linked.close()");
+                    builder.endControlFlow();
+                    builder.addStatement("$T.sort(linkedIds)", ClassName.get(Arrays.class));
+                    builder.addStatement("final boolean[] keep = new boolean[linkedIds.length]");
+                    builder.beginControlFlow("for (final long relId : relIds)");
+                    builder.addStatement("final int position = $T.binarySearch(linkedIds, relId)",
+                            ClassName.get(Arrays.class));
+                    builder.beginControlFlow("if (position >= 0)");
+                    builder.addStatement("keep[position] = true");
+                    builder.nextControlFlow("else");
+                    builder.add(SQLiteObjectScanner.withStatement(link, CodeBlock.builder()
+                            .addStatement("stmt.bindLong(1, object.$L)", primaryKey.call())
+                            .addStatement("stmt.bindLong(2, relId)")
+                            .addStatement("stmt.executeInsert()")
+                            .build()));
+                    builder.endControlFlow();
+                    builder.endControlFlow();
+                    builder.addStatement("final $1T removedIds = new $1T()", ClassName.get(StringBuilder.class));
+                    builder.addStatement("int removedCount = 0");
+                    builder.beginControlFlow("for (int i = 0; i < keep.length; ++i)");
+                    builder.beginControlFlow("if (!keep[i])");
+                    builder.beginControlFlow("if (removedIds.length() > 0)");
+                    builder.addStatement("removedIds.append(',')");
+                    builder.endControlFlow();
+                    builder.addStatement("removedIds.append(linkedIds[i])");
+                    builder.addStatement("++removedCount");
+                    builder.endControlFlow();
+                    builder.beginControlFlow("if (removedCount > 0 && (removedCount == $L || i == keep.length - 1))",
+                            SQLiteObjectScanner.IN_CHUNK_SIZE);
+                    builder.addStatement("client.executeUpdateDelete($S + removedIds + $S, object.$L)",
+                            String.format(Locale.US, "DELETE FROM %s WHERE %s_id = ? AND %s_id IN (",
+                                    relTable, table, relTypeTable), ");", primaryKey.call());
+                    builder.addStatement("removedIds.setLength(0)");
+                    builder.addStatement("removedCount = 0");
+                    builder.endControlFlow();
+                    builder.endControlFlow();
                     builder.endControlFlow();
                 }
             };
         }
 
+    }
+
+    private static class LazyRelationInstantiateFunc
+            implements Func3<Name, ClassName, Func0<String>, Action1<CodeBlock.Builder>> {
+
+        @Override
+        public Action1<CodeBlock.Builder> call(final Name fieldName, final ClassName lazyType,
+                                               final Func0<String> primaryKey) {
+            return new Action1<CodeBlock.Builder>() {
+                @Override
+                public void call(CodeBlock.Builder builder) {
+                    // a streamed row object is refilled for every row, its proxy only needs the new row id
+                    builder.beginControlFlow("if (reuseRelations && object.$L instanceof $T)", fieldName, lazyType)
+                            .addStatement("(($T) object.$L).reset(object.$L)", lazyType, fieldName, primaryKey.call())
+                            .nextControlFlow("else")
+                            .addStatement("object.$L = new $T(object.$L)", fieldName, lazyType, primaryKey.call())
+                            .endControlFlow();
+                }
+            };
+        }
+
+    }
+
+    private static class LazyRelationSaveFunc
+            implements Func3<Name, ClassName, Action1<CodeBlock.Builder>, Action1<CodeBlock.Builder>> {
+
+        @Override
+        public Action1<CodeBlock.Builder> call(final Name fieldName, final ClassName lazyType,
+                                               final Action1<CodeBlock.Builder> saveAction) {
+            return new Action1<CodeBlock.Builder>() {
+                @Override
+                public void call(CodeBlock.Builder builder) {
+                    builder.beginControlFlow("if (!(object.$1L instanceof $2T) || (($2T) object.$1L).isLoaded())",
+                            fieldName, lazyType);
+                    saveAction.call(builder);
+                    builder.endControlFlow();
+                }
+            };
+        }
+
+    }
+
+    private static class LazyListTypeFunc implements Func3<ClassName, TypeMirror, String, TypeSpec> {
+
+        @Override
+        public TypeSpec call(ClassName lazyType, TypeMirror relType, String query) {
+            final TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), ClassName.get(relType));
+            return TypeSpec.classBuilder(lazyType.simpleName())
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .superclass(ParameterizedTypeName.get(ClassName.get(AbstractList.class), ClassName.get(relType)))
+                    .addField(TypeName.LONG, "mRowId", Modifier.PRIVATE)
+                    .addField(listType, "mDelegate", Modifier.PRIVATE)
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addParameter(TypeName.LONG, "rowId")
+                            .addStatement("mRowId = rowId")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("reset")
+                            .addModifiers(Modifier.SYNCHRONIZED)
+                            .addParameter(TypeName.LONG, "rowId")
+                            .addStatement("mRowId = rowId")
+                            .addStatement("mDelegate = null")
+                            .addStatement("++modCount")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("isLoaded")
+                            .addModifiers(Modifier.SYNCHRONIZED)
+                            .returns(TypeName.BOOLEAN)
+                            .addStatement("return mDelegate != null")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("delegate")
+                            .addModifiers(Modifier.PRIVATE, Modifier.SYNCHRONIZED)
+                            .returns(listType)
+                            .beginControlFlow("if (mDelegate == null)")
+                            .addStatement("mDelegate = $T.rawQuery($T.class, " +
+                                            "\"SELECT \" + $T.QUALIFIED_COLUMNS + $S, mRowId)",
+                                    ClassName.get("droidkit.sqlite", "SQLite"),
+                                    ClassName.get(relType), ClassName.bestGuess(relType.toString() + "$SQLiteHelper"),
+                                    query)
+                            .endControlFlow()
+                            .addStatement("return mDelegate")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("get")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(TypeName.INT, "location")
+                            .returns(ClassName.get(relType))
+                            .addStatement("return delegate().get(location)")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("size")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(TypeName.INT)
+                            .addStatement("return delegate().size()")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("set")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(TypeName.INT, "location")
+                            .addParameter(ClassName.get(relType), "object")
+                            .returns(ClassName.get(relType))
+                            .addStatement("return delegate().set(location, object)")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("add")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(TypeName.INT, "location")
+                            .addParameter(ClassName.get(relType), "object")
+                            .addStatement("delegate().add(location, object)")
+                            .addStatement("++modCount")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("remove")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(TypeName.INT, "location")
+                            .returns(ClassName.get(relType))
+                            .addStatement("++modCount")
+                            .addStatement("return delegate().remove(location)")
+                            .build())
+                    .build();
+        }
+
     }
     //endregion
 
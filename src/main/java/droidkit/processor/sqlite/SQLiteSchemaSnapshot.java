@@ -0,0 +1,244 @@
+package droidkit.processor.sqlite;
+
+import droidkit.processor.Strings;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Daniel Serdyukov
+ */
+class SQLiteSchemaSnapshot {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Pattern OBJECT_NAME = Pattern.compile("(?i)\\b(?:INDEX|TRIGGER|TABLE) IF NOT EXISTS (\\w+)");
+
+    private static final Set<String> CONSTRAINTS = new HashSet<>(Arrays.asList(
+            "UNIQUE", "PRIMARY", "CHECK", "FOREIGN", "CONSTRAINT"
+    ));
+
+    private final Map<String, Map<String, String>> mColumns = new TreeMap<>();
+
+    private final Map<String, List<String>> mConstraints = new TreeMap<>();
+
+    private final Map<String, String> mOptions = new TreeMap<>();
+
+    private final Map<String, String> mRelations = new TreeMap<>();
+
+    private final Map<String, String> mIndices = new TreeMap<>();
+
+    private final Map<String, String> mTriggers = new TreeMap<>();
+
+    static SQLiteSchemaSnapshot of(Collection<SQLiteObjectScanner> scanners) {
+        final SQLiteSchemaSnapshot snapshot = new SQLiteSchemaSnapshot();
+        for (final SQLiteObjectScanner scanner : scanners) {
+            final String table = scanner.getTableName();
+            snapshot.mColumns.put(table, new LinkedHashMap<String, String>());
+            snapshot.mConstraints.put(table, new ArrayList<String>());
+            snapshot.mOptions.put(table, scanner.isWithoutRowId() ? " WITHOUT ROWID" : "");
+            for (final String def : scanner.getColumnDefs()) {
+                snapshot.addColumnDef(table, def);
+            }
+            for (final String sql : scanner.getRelationTableSql()) {
+                snapshot.mRelations.put(objectName(sql), sql);
+            }
+            for (final String sql : scanner.getIndexSql()) {
+                snapshot.mIndices.put(objectName(sql), sql);
+            }
+            for (final String sql : scanner.getTriggerSql()) {
+                snapshot.mTriggers.put(objectName(sql), sql);
+            }
+        }
+        return snapshot;
+    }
+
+    static SQLiteSchemaSnapshot read(File file) throws IOException {
+        final SQLiteSchemaSnapshot snapshot = new SQLiteSchemaSnapshot();
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] entry = line.split("\t", 3);
+                if (entry.length < 3) {
+                    continue;
+                }
+                if ("table".equals(entry[0])) {
+                    snapshot.mColumns.put(entry[1], new LinkedHashMap<String, String>());
+                    snapshot.mConstraints.put(entry[1], new ArrayList<String>());
+                    snapshot.mOptions.put(entry[1], entry[2]);
+                } else if ("column".equals(entry[0])) {
+                    snapshot.addColumnDef(entry[1], entry[2]);
+                } else if ("relation".equals(entry[0])) {
+                    snapshot.mRelations.put(entry[1], entry[2]);
+                } else if ("index".equals(entry[0])) {
+                    snapshot.mIndices.put(entry[1], entry[2]);
+                } else if ("trigger".equals(entry[0])) {
+                    snapshot.mTriggers.put(entry[1], entry[2]);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static void keepReferences(Map<String, String> objects, Map<String, String> existing,
+                                       Pattern tableRef) {
+        for (final Map.Entry<String, String> object : existing.entrySet()) {
+            if (!objects.containsKey(object.getKey()) && tableRef.matcher(object.getValue()).find()) {
+                objects.put(object.getKey(), object.getValue());
+            }
+        }
+    }
+
+    private static String objectName(String sql) {
+        final Matcher matcher = OBJECT_NAME.matcher(sql);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        return sql;
+    }
+
+    private static boolean isConstraint(String def) {
+        return CONSTRAINTS.contains(def.split("[\\s(]", 2)[0].toUpperCase(Locale.US));
+    }
+
+    private static String columnName(String def) {
+        return def.split("\\s", 2)[0];
+    }
+
+    void write(File file) throws IOException {
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8))) {
+            for (final Map.Entry<String, Map<String, String>> table : mColumns.entrySet()) {
+                writer.write("table\t" + table.getKey() + "\t" + mOptions.get(table.getKey()) + "\n");
+                for (final String def : table.getValue().values()) {
+                    writer.write("column\t" + table.getKey() + "\t" + def + "\n");
+                }
+                for (final String def : mConstraints.get(table.getKey())) {
+                    writer.write("column\t" + table.getKey() + "\t" + def + "\n");
+                }
+            }
+            write(writer, "relation", mRelations);
+            write(writer, "index", mIndices);
+            write(writer, "trigger", mTriggers);
+        }
+    }
+
+    /**
+     * Keeps the tables of an existing snapshot of the same version that this one misses, together with the
+     * relation tables, indices and triggers referring to them: a partial build doesn't see every entity.
+     *
+     * @return names of the kept tables
+     */
+    Set<String> keepMissingTables(SQLiteSchemaSnapshot existing) {
+        final Set<String> kept = new TreeSet<>(existing.mColumns.keySet());
+        kept.removeAll(mColumns.keySet());
+        if (kept.isEmpty()) {
+            return kept;
+        }
+        for (final String table : kept) {
+            mColumns.put(table, existing.mColumns.get(table));
+            mConstraints.put(table, existing.mConstraints.get(table));
+            mOptions.put(table, existing.mOptions.get(table));
+        }
+        final Pattern tableRef = Pattern.compile("(?i)\\b(?:" + Strings.join("|", kept) + ")\\b");
+        keepReferences(mRelations, existing.mRelations, tableRef);
+        keepReferences(mIndices, existing.mIndices, tableRef);
+        keepReferences(mTriggers, existing.mTriggers, tableRef);
+        return kept;
+    }
+
+    List<String> migrateFrom(SQLiteSchemaSnapshot previous, boolean dropTables) {
+        if (!dropTables && (!mColumns.keySet().containsAll(previous.mColumns.keySet())
+                || !mRelations.keySet().containsAll(previous.mRelations.keySet()))) {
+            return null;
+        }
+        final List<String> statements = new ArrayList<>();
+        for (final Map.Entry<String, Map<String, String>> table : mColumns.entrySet()) {
+            final String tableName = table.getKey();
+            final Map<String, String> oldColumns = previous.mColumns.get(tableName);
+            if (oldColumns == null) {
+                final List<String> defs = new ArrayList<>(table.getValue().values());
+                defs.addAll(mConstraints.get(tableName));
+                statements.add("CREATE TABLE IF NOT EXISTS " + tableName + "(" + Strings.join(", ", defs) + ")" +
+                        mOptions.get(tableName) + ";");
+                continue;
+            }
+            if (!mConstraints.get(tableName).equals(previous.mConstraints.get(tableName))
+                    || !mOptions.get(tableName).equals(previous.mOptions.get(tableName))) {
+                return null;
+            }
+            for (final Map.Entry<String, String> column : oldColumns.entrySet()) {
+                if (!column.getValue().equals(table.getValue().get(column.getKey()))) {
+                    return null;
+                }
+            }
+            for (final Map.Entry<String, String> column : table.getValue().entrySet()) {
+                if (!oldColumns.containsKey(column.getKey())) {
+                    if (!canAddColumn(column.getValue())) {
+                        return null;
+                    }
+                    statements.add("ALTER TABLE " + tableName + " ADD COLUMN " + column.getValue() + ";");
+                }
+            }
+        }
+        for (final Map.Entry<String, String> relation : mRelations.entrySet()) {
+            final String oldSql = previous.mRelations.get(relation.getKey());
+            if (oldSql == null) {
+                statements.add(relation.getValue());
+            } else if (!oldSql.equals(relation.getValue())) {
+                return null;
+            }
+        }
+        replace(statements, "INDEX", previous.mIndices, mIndices);
+        replace(statements, "TRIGGER", previous.mTriggers, mTriggers);
+        for (final String relation : previous.mRelations.keySet()) {
+            if (!mRelations.containsKey(relation)) {
+                statements.add("DROP TABLE IF EXISTS " + relation + ";");
+            }
+        }
+        for (final String table : previous.mColumns.keySet()) {
+            if (!mColumns.containsKey(table)) {
+                statements.add("DROP TABLE IF EXISTS " + table + ";");
+            }
+        }
+        return statements;
+    }
+
+    private void addColumnDef(String table, String def) {
+        if (isConstraint(def)) {
+            mConstraints.get(table).add(def);
+        } else {
+            mColumns.get(table).put(columnName(def), def);
+        }
+    }
+
+    private boolean canAddColumn(String def) {
+        final String upperDef = def.toUpperCase(Locale.US);
+        return !upperDef.contains("PRIMARY KEY") && !upperDef.contains("UNIQUE")
+                && (!upperDef.contains("NOT NULL") || upperDef.contains("DEFAULT"));
+    }
+
+    private void replace(List<String> statements, String type, Map<String, String> oldObjects,
+                         Map<String, String> newObjects) {
+        for (final Map.Entry<String, String> object : oldObjects.entrySet()) {
+            if (!object.getValue().equals(newObjects.get(object.getKey()))) {
+                statements.add("DROP " + type + " IF EXISTS " + object.getKey() + ";");
+            }
+        }
+        for (final Map.Entry<String, String> object : newObjects.entrySet()) {
+            if (!object.getValue().equals(oldObjects.get(object.getKey()))) {
+                statements.add(object.getValue());
+            }
+        }
+    }
+
+    private void write(Writer writer, String type, Map<String, String> objects) throws IOException {
+        for (final Map.Entry<String, String> object : objects.entrySet()) {
+            writer.write(type + "\t" + object.getKey() + "\t" + object.getValue() + "\n");
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package droidkit.processor.sqlite;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import rx.functions.Action1;
+
+import javax.lang.model.type.TypeMirror;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Stores a BigDecimal as a long count of units at a fixed scale, extra fractional digits are rounded half up.
+ *
+ * @author Daniel Serdyukov
+ */
+class ScaledDecimalConversion extends BigDecimalConversion {
+
+    private final int mScale;
+
+    ScaledDecimalConversion(int scale) {
+        mScale = scale;
+    }
+
+    int getScale() {
+        return mScale;
+    }
+
+    @Override
+    public String sqliteType() {
+        return " INTEGER";
+    }
+
+    @Override
+    public Action1<CodeBlock.Builder> convertToJavaType(final String fieldName, final int columnIndex,
+                                                        TypeMirror type) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.addStatement("object.$1L = cursor.isNull(indices[$2L]) ? null : " +
+                                "$3T.valueOf(cursor.getLong(indices[$2L]), $4L)",
+                        fieldName, columnIndex, ClassName.get(BigDecimal.class), mScale);
+            }
+        };
+    }
+
+    @Override
+    public Action1<CodeBlock.Builder> bindToStatement(final String value, final String bindIndex) {
+        return new Action1<CodeBlock.Builder>() {
+            @Override
+            public void call(CodeBlock.Builder builder) {
+                builder.beginControlFlow("if ($L == null)", value)
+                        .addStatement("stmt.bindNull($L)", bindIndex)
+                        .nextControlFlow("else")
+                        .addStatement("stmt.bindLong($L, $L.setScale($L, $T.HALF_UP)" +
+                                        ".movePointRight($L).longValueExact())",
+                                bindIndex, value, mScale, ClassName.get(RoundingMode.class), mScale)
+                        .endControlFlow();
+            }
+        };
+    }
+
+    @Override
+    public String bindArgument(String value) {
+        return value + " == null ? null : " + value + ".setScale(" + mScale + ", " + RoundingMode.class.getName() +
+                ".HALF_UP).movePointRight(" + mScale + ").longValueExact()";
+    }
+
+}
@@ -33,6 +33,10 @@ interface TypeConversion {
 
     String sqliteType();
 
-    Action1<CodeBlock.Builder> convertToJavaType(String fieldName, String columnName, TypeMirror type);
+    Action1<CodeBlock.Builder> convertToJavaType(String fieldName, int columnIndex, TypeMirror type);
+
+    Action1<CodeBlock.Builder> bindToStatement(String value, String bindIndex);
+
+    String bindArgument(String value);
 
 }
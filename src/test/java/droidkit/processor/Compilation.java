@@ -0,0 +1,126 @@
+package droidkit.processor;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * @author Daniel Serdyukov
+ */
+public class Compilation {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final DiagnosticCollector<JavaFileObject> mDiagnostics = new DiagnosticCollector<>();
+
+    private final Path mClasses;
+
+    private final Path mGenerated;
+
+    private final boolean mSuccess;
+
+    private Compilation(List<File> sources, List<String> options) throws IOException {
+        mClasses = Files.createTempDirectory("classes");
+        mGenerated = Files.createTempDirectory("generated");
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (final StandardJavaFileManager fileManager = compiler.getStandardFileManager(mDiagnostics, null, UTF_8)) {
+            final List<String> args = new ArrayList<>(Arrays.asList(
+                    "-source", "1.7", "-target", "1.7", "-Xlint:-options",
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", mClasses.toString(),
+                    "-s", mGenerated.toString()
+            ));
+            args.addAll(options);
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, mDiagnostics, args, null,
+                    fileManager.getJavaFileObjectsFromFiles(sources));
+            task.setProcessors(Collections.singletonList(new AnnotationProcessor()));
+            mSuccess = task.call();
+        }
+    }
+
+    public static Compilation compile(String... resources) throws IOException {
+        return compile(Collections.<String>emptyList(), resources);
+    }
+
+    public static Compilation compile(List<String> options, String... resources) throws IOException {
+        final List<File> sources = new ArrayList<>(javaFiles(resource("stubs")));
+        sources.addAll(javaFiles(resource("runtime")));
+        for (final String resource : resources) {
+            sources.add(resource(resource).toFile());
+        }
+        return new Compilation(sources, options);
+    }
+
+    private static Path resource(String name) {
+        final URL url = Compilation.class.getClassLoader().getResource(name);
+        if (url == null) {
+            throw new IllegalArgumentException("No such test resource: " + name);
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static List<File> javaFiles(Path root) throws IOException {
+        final List<File> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.toString().endsWith(".java")) {
+                    files.add(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    public boolean isSuccess() {
+        return mSuccess;
+    }
+
+    public String errors() {
+        final StringBuilder errors = new StringBuilder();
+        for (final Diagnostic<? extends JavaFileObject> diagnostic : mDiagnostics.getDiagnostics()) {
+            if (Diagnostic.Kind.ERROR == diagnostic.getKind()) {
+                errors.append(diagnostic.getMessage(Locale.US)).append('\n');
+            }
+        }
+        return errors.toString();
+    }
+
+    public String generatedSource(String className) throws IOException {
+        final Path file = mGenerated.resolve(className.replace('.', File.separatorChar) + ".java");
+        return new String(Files.readAllBytes(file), UTF_8);
+    }
+
+    /**
+     * Class path of this compilation followed by its output, for compiling another module against it.
+     */
+    public String dependentClassPath() {
+        return System.getProperty("java.class.path") + File.pathSeparator + mClasses;
+    }
+
+    public ClassLoader classLoader() throws IOException {
+        return new URLClassLoader(new URL[]{mClasses.toUri().toURL()}, Compilation.class.getClassLoader());
+    }
+
+    /**
+     * Runs a compiled {@link Callable} scenario against the generated code and returns its result.
+     */
+    public Object call(String className) throws Exception {
+        final Class<?> scenario = classLoader().loadClass(className);
+        return ((Callable<?>) scenario.newInstance()).call();
+    }
+
+}
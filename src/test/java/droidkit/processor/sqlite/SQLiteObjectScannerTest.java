@@ -0,0 +1,273 @@
+package droidkit.processor.sqlite;
+
+import droidkit.processor.Compilation;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Daniel Serdyukov
+ */
+public class SQLiteObjectScannerTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void foreignKeysAndScaledColumnsGetOwnUpdaters() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java", "sqlite/Publisher.java",
+                "sqlite/Book.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Book$SQLiteHelper");
+        Assert.assertTrue(helper.contains("static int updateAuthorId(long value, long rowId)"));
+        Assert.assertTrue(helper.contains("static int updatePublisherId(long value, long rowId)"));
+        Assert.assertTrue(helper.contains("static int updatePages(long value, long rowId)"));
+        Assert.assertTrue(helper.contains("value.setScale(2, RoundingMode.HALF_UP).movePointRight(2)"));
+        Assert.assertTrue(helper.contains("value.setScale(6, RoundingMode.HALF_UP).movePointRight(6)"));
+    }
+
+    @Test
+    public void scaledDecimalsAreRoundedToTheColumnScale() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java", "sqlite/Publisher.java",
+                "sqlite/Book.java", "sqlite/BookPrice.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertArrayEquals(new String[]{"1.23", "0.123457", "2.35"},
+                (String[]) compilation.call("com.example.BookPrice"));
+    }
+
+    @Test
+    public void compositeKeyTablesHaveNoRowUpdaters() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Rate.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Rate$SQLiteHelper");
+        Assert.assertTrue(helper.contains("static final int STMT_DELETE = 1;"));
+        Assert.assertFalse(helper.contains("STMT_UPDATE"));
+        Assert.assertFalse(helper.contains("UPDATE rates"));
+    }
+
+    @Test
+    public void compositeKeyRejectsDirtyTracking() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/TrackedRate.java");
+        Assert.assertFalse(compilation.isSuccess());
+        Assert.assertTrue(compilation.errors(), compilation.errors().contains(
+                "primaryKey can't be combined with activeRecord or dirtyTracking"));
+    }
+
+    @Test
+    public void compositeKeyRejectsActiveRecord() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/ActiveRate.java");
+        Assert.assertFalse(compilation.isSuccess());
+        Assert.assertTrue(compilation.errors(), compilation.errors().contains(
+                "primaryKey can't be combined with activeRecord or dirtyTracking"));
+    }
+
+    @Test
+    public void queryCacheIsKeyedByClientAndClearedOnRelease() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String cache = compilation.generatedSource("droidkit.sqlite.SQLiteQueryCache");
+        Assert.assertTrue(cache.contains("mClient == other.mClient"));
+        Assert.assertTrue(cache.contains("private static int sMaxSize;"));
+        final String metaData = compilation.generatedSource("droidkit.sqlite.SQLiteMetaData");
+        Assert.assertTrue(metaData.contains("SQLiteQueryCache.clear();"));
+    }
+
+    @Test
+    public void dirtyObjectsAreFlushedOffTheMainThread() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Note.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Note$SQLiteHelper");
+        Assert.assertTrue(helper.contains("sFlushExecutor = AsyncTask.SERIAL_EXECUTOR"));
+        Assert.assertTrue(helper.contains("public static void setFlushExecutor(Executor executor)"));
+        Assert.assertFalse(helper.contains("getMainLooper()"));
+        Assert.assertTrue(helper.contains("mask[i] |= entry.getValue()[i]"));
+    }
+
+    @Test
+    public void setterDuringFlushStaysDirty() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Note.java", "sqlite/NoteFlush.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertEquals("second", compilation.call("com.example.NoteFlush"));
+    }
+
+    @Test
+    public void failedFlushKeepsColumnsDirty() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Note.java", "sqlite/NoteFlushFailure.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertEquals("text", compilation.call("com.example.NoteFlushFailure"));
+    }
+
+    @Test
+    public void partialUpdatesReuseCompiledStatements() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Note.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Note$SQLiteHelper");
+        Assert.assertTrue(helper.contains("final String update = \"UPDATE notes SET \" + sql.substring(2) + " +
+                "\" WHERE _id = ?;\""));
+        Assert.assertTrue(helper.contains("PARTIAL_UPDATES.remove(sql)"));
+        Assert.assertFalse(helper.contains("client.compileStatement(\"UPDATE notes SET \""));
+    }
+
+    @Test
+    public void partialUpdatesKeepSixteenStatementsOpen() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Survey.java", "sqlite/SurveyUpdates.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertArrayEquals(new int[]{16, 0}, (int[]) compilation.call("com.example.SurveyUpdates"));
+    }
+
+    @Test
+    public void statementsRunOutsideTheCacheLock() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java", "sqlite/StatementLocking.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertEquals(Boolean.TRUE, compilation.call("com.example.StatementLocking"));
+    }
+
+    @Test
+    public void changesWaitForTheOutermostTransaction() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Author$SQLiteHelper");
+        Assert.assertTrue(helper.contains("SQLiteChanges.beginTransaction(client)"));
+        Assert.assertTrue(helper.contains("SQLiteChanges.endTransaction(client)"));
+        Assert.assertFalse(helper.contains("client.beginTransaction()"));
+        final String changes = compilation.generatedSource("droidkit.sqlite.SQLiteChanges");
+        Assert.assertTrue(changes.contains("public static void beginTransaction(SQLiteClient client)"));
+        Assert.assertTrue(changes.contains("successful = marked"));
+    }
+
+    @Test
+    public void missingCursorColumnsAreSkipped() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Author$SQLiteHelper");
+        Assert.assertTrue(helper.contains("indices[i] = cursor.getColumnIndex(PROJECTION[i])"));
+        Assert.assertTrue(helper.contains("if (indices[1] >= 0) {\n" +
+                "      object.mName = cursor.getString(indices[1]);"));
+        Assert.assertFalse(helper.contains("getColumnIndexOrThrow"));
+    }
+
+    @Test
+    public void relationLinksUseCachedStatements() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java", "sqlite/Publisher.java",
+                "sqlite/Library.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Library$SQLiteHelper");
+        Assert.assertTrue(helper.contains("\"DELETE FROM libraries_authors WHERE libraries_id = ?;\""));
+        Assert.assertTrue(helper.contains("obtainStatement(client, STMT_UNLINK_LIBRARIES_AUTHORS)"));
+        Assert.assertTrue(helper.contains("obtainStatement(client, STMT_LINK_LIBRARIES_AUTHORS)"));
+        Assert.assertTrue(helper.contains("obtainStatement(client, STMT_LINK_LIBRARIES_PUBLISHERS)"));
+        Assert.assertTrue(helper.contains("removedCount == 500"));
+        Assert.assertFalse(helper.contains("client.compileStatement(\"INSERT INTO libraries_"));
+    }
+
+    @Test
+    public void savingParentTwiceKeepsOneToManyLinks() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java", "sqlite/Publisher.java",
+                "sqlite/Library.java", "sqlite/LibraryLinks.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertArrayEquals(new long[]{2, 2, 1}, (long[]) compilation.call("com.example.LibraryLinks"));
+    }
+
+    @Test
+    public void nullFinderArgumentsMatchNullColumns() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Note.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Note$SQLiteHelper");
+        Assert.assertTrue(helper.contains("where.append(text == null ? \"text IS NULL\" : \"text = ?\")"));
+        Assert.assertTrue(helper.contains("client.query(\"SELECT _id, text FROM notes\" + where + \";\", " +
+                "bindArgs.toArray())"));
+        Assert.assertTrue(helper.contains("client.compileStatement(\"SELECT COUNT(*) FROM notes\" + where + \";\")"));
+    }
+
+    @Test
+    public void identityMapEvictsLeastRecentlyUsed() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Note.java", "sqlite/NoteIdentities.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Note$SQLiteHelper");
+        Assert.assertTrue(helper.contains("LongSparseArray<Identity> IDENTITIES"));
+        Assert.assertFalse(helper.contains("Map<Long, "));
+        Assert.assertArrayEquals(new boolean[]{true, true, false, true},
+                (boolean[]) compilation.call("com.example.NoteIdentities"));
+    }
+
+    @Test
+    public void reloadedIdentityReplacesStaleOneToOneRelation() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java", "sqlite/Shelf.java",
+                "sqlite/ShelfKeeper.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertEquals("second", compilation.call("com.example.ShelfKeeper"));
+    }
+
+    @Test
+    public void maxAndMinOfEmptyTableAreNull() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java", "sqlite/Publisher.java",
+                "sqlite/Book.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String helper = compilation.generatedSource("com.example.Book$SQLiteHelper");
+        Assert.assertTrue(helper.contains("\"SELECT MAX(pages) FROM books;\""));
+        Assert.assertTrue(helper.contains("\"SELECT IFNULL(SUM(pages), 0) FROM books;\""));
+        Assert.assertTrue(helper.contains("public static Long maxPages(SQLiteClient client)"));
+        Assert.assertTrue(helper.contains("public static Long minPages(SQLiteClient client)"));
+        Assert.assertTrue(helper.contains("public static long sumPages(SQLiteClient client)"));
+        Assert.assertFalse(helper.contains("IFNULL(MAX("));
+        Assert.assertFalse(helper.contains("Long.valueOf(value)"));
+    }
+
+    @Test
+    public void integralAggregatesTellZeroFromNull() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Author.java", "sqlite/Publisher.java",
+                "sqlite/Book.java", "sqlite/BookAggregates.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertEquals(Arrays.asList("null/null/0", "null/null/0.00", "0/0/0", "0.00/0.00/0.00",
+                "7/0/7", "1.25/0.00/1.25"), compilation.call("com.example.BookAggregates"));
+    }
+
+    @Test
+    public void streamedRowsReuseTheLazyRelationProxy() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Publisher.java", "sqlite/Archive.java",
+                "sqlite/ArchiveStream.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertArrayEquals(new long[]{1, 1, 2, 3}, (long[]) compilation.call("com.example.ArchiveStream"));
+    }
+
+    @Test
+    public void migrationsRunInOneTransaction() throws Exception {
+        final File schemaDir = mFolder.newFolder();
+        Files.write(new File(schemaDir, "schema-1.txt").toPath(), Arrays.asList(
+                "table\tauthors\t",
+                "column\tauthors\t_id INTEGER PRIMARY KEY ON CONFLICT REPLACE"
+        ), Charset.forName("UTF-8"));
+        final Compilation compilation = Compilation.compile(Arrays.asList(
+                "-Adroidkit.schemaDir=" + schemaDir, "-Adroidkit.schemaVersion=2"
+        ), "sqlite/Author.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertTrue(new File(schemaDir, "schema-2.txt").isFile());
+        final String migrations = compilation.generatedSource("droidkit.sqlite.SQLiteMigrations");
+        Assert.assertTrue(migrations.contains("MIGRATION_2 = {\"ALTER TABLE authors ADD COLUMN name TEXT;\"}"));
+        Assert.assertTrue(migrations.contains("db.beginTransaction()"));
+        Assert.assertTrue(migrations.contains("db.execSQL(sql)"));
+        Assert.assertFalse(migrations.contains("compileStatement"));
+    }
+
+    @Test
+    public void partialBuildKeepsSnapshotTables() throws Exception {
+        final File schemaDir = mFolder.newFolder();
+        final List<String> options = Arrays.asList(
+                "-Adroidkit.schemaDir=" + schemaDir, "-Adroidkit.schemaVersion=1");
+        Assert.assertTrue(Compilation.compile(options, "sqlite/Author.java", "sqlite/Publisher.java").isSuccess());
+        final Compilation compilation = Compilation.compile(options, "sqlite/Author.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String snapshot = new String(Files.readAllBytes(new File(schemaDir, "schema-1.txt").toPath()),
+                Charset.forName("UTF-8"));
+        Assert.assertTrue(snapshot.contains("table\tauthors\t"));
+        Assert.assertTrue(snapshot.contains("table\tpublishers\t"));
+    }
+
+}
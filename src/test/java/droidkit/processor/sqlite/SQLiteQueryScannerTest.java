@@ -0,0 +1,79 @@
+package droidkit.processor.sqlite;
+
+import droidkit.processor.Compilation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * @author Daniel Serdyukov
+ */
+public class SQLiteQueryScannerTest {
+
+    @Test
+    public void enumParamsBindThroughColumnStorage() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Status.java", "sqlite/Account.java",
+                "sqlite/AccountQueries.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String impl = compilation.generatedSource("com.example.AccountQueries$Impl");
+        Assert.assertTrue(impl.contains("ACCOUNTS_STATUS_CODES = {10, 20}"));
+        Assert.assertTrue(impl.contains("status == null ? null : ACCOUNTS_STATUS_CODES[status.ordinal()]"));
+        Assert.assertTrue(impl.contains("stmt.bindLong(1, ACCOUNTS_STATUS_CODES[status.ordinal()])"));
+        Assert.assertTrue(impl.contains("stmt.bindString(2, login)"));
+        Assert.assertFalse(impl.contains("status.name()"));
+    }
+
+    @Test
+    public void statementsAreCheckedOutOfTheCache() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Status.java", "sqlite/Account.java",
+                "sqlite/AccountQueries.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String impl = compilation.generatedSource("com.example.AccountQueries$Impl");
+        Assert.assertTrue(impl.contains("final SQLiteStmt stmt = obtainStatement("));
+        Assert.assertTrue(impl.contains("} finally {\n      recycleStatement("));
+        Assert.assertFalse(impl.contains("synchronized (mStatementCache) {\n      final SQLiteStmt stmt = obtain"));
+        final String helper = compilation.generatedSource("com.example.Account$SQLiteHelper");
+        Assert.assertTrue(helper.contains("final SQLiteStmt stmt = obtainStatement(client, "));
+        Assert.assertFalse(helper.contains("synchronized (STATEMENT_CACHE) {\n      final SQLiteStmt stmt = obtain"));
+    }
+
+    @Test
+    public void resolvesTablesOfAnotherModule() throws Exception {
+        final Compilation entities = Compilation.compile("sqlite/Status.java", "sqlite/Account.java");
+        Assert.assertTrue(entities.errors(), entities.isSuccess());
+        final Compilation compilation = Compilation.compile(
+                Arrays.asList("-classpath", entities.dependentClassPath()), "sqlite/AccountQueries.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String impl = compilation.generatedSource("com.example.AccountQueries$Impl");
+        Assert.assertTrue(impl.contains("stmt.bindLong(1, ACCOUNTS_STATUS_CODES[status.ordinal()])"));
+        Assert.assertTrue(impl.contains("return Account$SQLiteHelper.instantiateAll(mClient, cursor)"));
+    }
+
+    @Test
+    public void writesNotifyEveryTouchedTable() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Status.java", "sqlite/Account.java",
+                "sqlite/Author.java", "sqlite/AccountCleanup.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        final String impl = compilation.generatedSource("com.example.AccountCleanup$Impl");
+        Assert.assertTrue(impl.contains("SQLiteChanges.notifyChange(Account.class);"));
+        Assert.assertTrue(impl.contains("SQLiteChanges.notifyChange(Author.class);"));
+    }
+
+    @Test
+    public void metaDataReleasesQueryStatements() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Status.java", "sqlite/Account.java",
+                "sqlite/AccountQueries.java", "sqlite/QueryRelease.java");
+        Assert.assertTrue(compilation.errors(), compilation.isSuccess());
+        Assert.assertArrayEquals(new int[]{1, 2}, (int[]) compilation.call("com.example.QueryRelease"));
+    }
+
+    @Test
+    public void rejectsUnresolvedEnumParamForIntegerColumn() throws Exception {
+        final Compilation compilation = Compilation.compile("sqlite/Status.java", "sqlite/Account.java",
+                "sqlite/BadAccountQueries.java");
+        Assert.assertFalse(compilation.isSuccess());
+        Assert.assertTrue(compilation.errors(), compilation.errors().contains("Status is stored as INTEGER"));
+    }
+
+}
@@ -0,0 +1,146 @@
+package droidkit.processor.sqlite;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Daniel Serdyukov
+ */
+public class SQLiteSchemaSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void addsColumnsAndIndicesInPlace() throws Exception {
+        final SQLiteSchemaSnapshot v1 = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY",
+                "column\tbooks\ttitle TEXT");
+        final SQLiteSchemaSnapshot v2 = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY",
+                "column\tbooks\ttitle TEXT",
+                "column\tbooks\tpages INTEGER",
+                "index\tidx_books_title\tCREATE INDEX IF NOT EXISTS idx_books_title ON books(title);");
+        Assert.assertEquals(Arrays.asList(
+                "ALTER TABLE books ADD COLUMN pages INTEGER;",
+                "CREATE INDEX IF NOT EXISTS idx_books_title ON books(title);"
+        ), v2.migrateFrom(v1, false));
+    }
+
+    @Test
+    public void createsNewTables() throws Exception {
+        final SQLiteSchemaSnapshot v1 = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY");
+        final SQLiteSchemaSnapshot v2 = snapshot(
+                "table\tauthors\t",
+                "column\tauthors\t_id INTEGER PRIMARY KEY",
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY");
+        Assert.assertEquals(Arrays.asList(
+                "CREATE TABLE IF NOT EXISTS authors(_id INTEGER PRIMARY KEY);"
+        ), v2.migrateFrom(v1, false));
+    }
+
+    @Test
+    public void keepsMissingTablesUnlessDropIsAllowed() throws Exception {
+        final SQLiteSchemaSnapshot v1 = snapshot(
+                "table\tauthors\t",
+                "column\tauthors\t_id INTEGER PRIMARY KEY",
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY");
+        final SQLiteSchemaSnapshot v2 = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY");
+        Assert.assertNull(v2.migrateFrom(v1, false));
+        Assert.assertEquals(Arrays.asList(
+                "DROP TABLE IF EXISTS authors;"
+        ), v2.migrateFrom(v1, true));
+    }
+
+    @Test
+    public void keepsTablesMissingFromPartialBuild() throws Exception {
+        final SQLiteSchemaSnapshot existing = snapshot(
+                "table\tauthors\t",
+                "column\tauthors\t_id INTEGER PRIMARY KEY",
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY",
+                "column\tbooks\ttitle TEXT",
+                "index\tidx_authors_name\tCREATE INDEX IF NOT EXISTS idx_authors_name ON authors(name);",
+                "index\tidx_books_title\tCREATE INDEX IF NOT EXISTS idx_books_title ON books(title);");
+        final SQLiteSchemaSnapshot partial = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY",
+                "column\tbooks\tpages INTEGER");
+        Assert.assertEquals(Collections.singleton("authors"), partial.keepMissingTables(existing));
+        final File file = mFolder.newFile();
+        partial.write(file);
+        Assert.assertEquals(Arrays.asList(
+                "table\tauthors\t",
+                "column\tauthors\t_id INTEGER PRIMARY KEY",
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY",
+                "column\tbooks\tpages INTEGER",
+                "index\tidx_authors_name\tCREATE INDEX IF NOT EXISTS idx_authors_name ON authors(name);"
+        ), Files.readAllLines(file.toPath(), Charset.forName("UTF-8")));
+    }
+
+    @Test
+    public void rejectsChangedColumns() throws Exception {
+        final SQLiteSchemaSnapshot v1 = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY",
+                "column\tbooks\tprice REAL");
+        final SQLiteSchemaSnapshot v2 = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY",
+                "column\tbooks\tprice INTEGER");
+        Assert.assertNull(v2.migrateFrom(v1, true));
+    }
+
+    @Test
+    public void rejectsNotNullColumnWithoutDefault() throws Exception {
+        final SQLiteSchemaSnapshot v1 = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY");
+        final SQLiteSchemaSnapshot v2 = snapshot(
+                "table\tbooks\t",
+                "column\tbooks\t_id INTEGER PRIMARY KEY",
+                "column\tbooks\tstatus INTEGER NOT NULL");
+        Assert.assertNull(v2.migrateFrom(v1, false));
+    }
+
+    @Test
+    public void roundTripsThroughFile() throws Exception {
+        final SQLiteSchemaSnapshot snapshot = snapshot(
+                "table\tbooks\t WITHOUT ROWID",
+                "column\tbooks\tisbn TEXT",
+                "column\tbooks\tPRIMARY KEY(isbn)");
+        final File file = mFolder.newFile();
+        snapshot.write(file);
+        Assert.assertEquals(Arrays.asList(
+                "table\tbooks\t WITHOUT ROWID",
+                "column\tbooks\tisbn TEXT",
+                "column\tbooks\tPRIMARY KEY(isbn)"
+        ), Files.readAllLines(file.toPath(), Charset.forName("UTF-8")));
+        Assert.assertEquals(0, SQLiteSchemaSnapshot.read(file).migrateFrom(snapshot, false).size());
+    }
+
+    private SQLiteSchemaSnapshot snapshot(String... lines) throws IOException {
+        final File file = mFolder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines), Charset.forName("UTF-8"));
+        return SQLiteSchemaSnapshot.read(file);
+    }
+
+}
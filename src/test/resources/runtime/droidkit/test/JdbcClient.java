@@ -0,0 +1,161 @@
+package droidkit.test;
+
+import android.database.Cursor;
+import droidkit.sqlite.SQLiteClient;
+import droidkit.sqlite.SQLiteDb;
+import droidkit.sqlite.SQLiteStmt;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * In-memory SQLite client backed by the xerial JDBC driver, following the android nested transaction rules.
+ *
+ * @author Daniel Serdyukov
+ */
+public class JdbcClient implements SQLiteClient, SQLiteDb {
+
+    private final Connection mConnection;
+
+    private int mTransactionDepth;
+
+    private boolean mTransactionFailed;
+
+    private boolean mMarkedSuccessful;
+
+    public JdbcClient() {
+        try {
+            mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+            execSQL("PRAGMA foreign_keys = ON;");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void bind(PreparedStatement stmt, Object... args) throws SQLException {
+        for (int i = 0; i < args.length; ++i) {
+            final Object arg = args[i];
+            if (arg instanceof Boolean) {
+                stmt.setLong(i + 1, (Boolean) arg ? 1 : 0);
+            } else {
+                stmt.setObject(i + 1, arg);
+            }
+        }
+    }
+
+    @Override
+    public long executeInsert(String sql, Object... args) {
+        try (final PreparedStatement stmt = mConnection.prepareStatement(sql)) {
+            bind(stmt, args);
+            return stmt.executeUpdate() > 0 ? lastInsertRowId() : -1;
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+    }
+
+    @Override
+    public int executeUpdateDelete(String sql, Object... args) {
+        try (final PreparedStatement stmt = mConnection.prepareStatement(sql)) {
+            bind(stmt, args);
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+    }
+
+    @Override
+    public Cursor query(String sql, Object... args) {
+        try (final PreparedStatement stmt = mConnection.prepareStatement(sql)) {
+            bind(stmt, args);
+            return new JdbcCursor(stmt.executeQuery());
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+    }
+
+    @Override
+    public SQLiteStmt compileStatement(String sql) {
+        try {
+            return new JdbcStmt(this, sql, mConnection.prepareStatement(sql));
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        try (final Statement stmt = mConnection.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+    }
+
+    public long queryForLong(String sql, Object... args) {
+        final Cursor cursor = query(sql, args);
+        try {
+            if (!cursor.moveToNext()) {
+                throw new IllegalStateException("No rows: " + sql);
+            }
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void beginTransaction() {
+        try {
+            if (mTransactionDepth == 0) {
+                mConnection.setAutoCommit(false);
+                mTransactionFailed = false;
+            }
+            mMarkedSuccessful = false;
+            ++mTransactionDepth;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        mMarkedSuccessful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+        if (mTransactionDepth == 0) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        mTransactionFailed |= !mMarkedSuccessful;
+        mMarkedSuccessful = false;
+        if (--mTransactionDepth == 0) {
+            try {
+                if (mTransactionFailed) {
+                    mConnection.rollback();
+                } else {
+                    mConnection.commit();
+                }
+                mConnection.setAutoCommit(true);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Called before a compiled statement writes, scenarios override it to interleave with the write.
+     */
+    protected void onExecute(String sql) {
+    }
+
+    long lastInsertRowId() throws SQLException {
+        try (final Statement stmt = mConnection.createStatement()) {
+            return stmt.executeQuery("SELECT last_insert_rowid();").getLong(1);
+        }
+    }
+
+}
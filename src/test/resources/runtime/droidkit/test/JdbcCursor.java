@@ -0,0 +1,148 @@
+package droidkit.test;
+
+import android.database.Cursor;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Materialized result set exposed through the android cursor contract.
+ *
+ * @author Daniel Serdyukov
+ */
+class JdbcCursor implements Cursor {
+
+    private final String[] mColumns;
+
+    private final List<Object[]> mRows = new ArrayList<>();
+
+    private int mPosition = -1;
+
+    JdbcCursor(ResultSet rs) throws SQLException {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        mColumns = new String[metaData.getColumnCount()];
+        for (int i = 0; i < mColumns.length; ++i) {
+            mColumns[i] = metaData.getColumnLabel(i + 1);
+        }
+        while (rs.next()) {
+            final Object[] row = new Object[mColumns.length];
+            for (int i = 0; i < row.length; ++i) {
+                row[i] = rs.getObject(i + 1);
+            }
+            mRows.add(row);
+        }
+        rs.close();
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToPosition(int p) {
+        mPosition = Math.max(-1, Math.min(p, mRows.size()));
+        return mPosition >= 0 && mPosition < mRows.size();
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return mColumns.length;
+    }
+
+    @Override
+    public int getColumnIndex(String n) {
+        for (int i = 0; i < mColumns.length; ++i) {
+            if (mColumns[i].equalsIgnoreCase(n)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String n) {
+        final int index = getColumnIndex(n);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + n + "' does not exist");
+        }
+        return index;
+    }
+
+    private Object value(int i) {
+        return mRows.get(mPosition)[i];
+    }
+
+    @Override
+    public long getLong(int i) {
+        final Object value = value(i);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public int getInt(int i) {
+        return (int) getLong(i);
+    }
+
+    @Override
+    public short getShort(int i) {
+        return (short) getLong(i);
+    }
+
+    @Override
+    public double getDouble(int i) {
+        final Object value = value(i);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value == null ? 0 : Double.parseDouble(value.toString());
+    }
+
+    @Override
+    public float getFloat(int i) {
+        return (float) getDouble(i);
+    }
+
+    @Override
+    public String getString(int i) {
+        final Object value = value(i);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public byte[] getBlob(int i) {
+        return (byte[]) value(i);
+    }
+
+    @Override
+    public boolean isNull(int i) {
+        return value(i) == null;
+    }
+
+    @Override
+    public void close() {
+        mRows.clear();
+    }
+
+}
@@ -0,0 +1,144 @@
+package droidkit.test;
+
+import droidkit.sqlite.SQLiteStmt;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * @author Daniel Serdyukov
+ */
+class JdbcStmt implements SQLiteStmt {
+
+    private final JdbcClient mClient;
+
+    private final String mSql;
+
+    private final PreparedStatement mStatement;
+
+    JdbcStmt(JdbcClient client, String sql, PreparedStatement statement) {
+        mClient = client;
+        mSql = sql;
+        mStatement = statement;
+    }
+
+    @Override
+    public void bindNull(int i) {
+        try {
+            mStatement.setNull(i, Types.NULL);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void bindLong(int i, long v) {
+        try {
+            mStatement.setLong(i, v);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void bindDouble(int i, double v) {
+        try {
+            mStatement.setDouble(i, v);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void bindString(int i, String v) {
+        try {
+            mStatement.setString(i, v);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void bindBlob(int i, byte[] v) {
+        try {
+            mStatement.setBytes(i, v);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void clearBindings() {
+        try {
+            mStatement.clearParameters();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void execute() {
+        try {
+            mClient.onExecute(mSql);
+            mStatement.execute();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long executeInsert() {
+        try {
+            mClient.onExecute(mSql);
+            return mStatement.executeUpdate() > 0 ? mClient.lastInsertRowId() : -1;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int executeUpdateDelete() {
+        try {
+            mClient.onExecute(mSql);
+            return mStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long simpleQueryForLong() {
+        try (final ResultSet rs = mStatement.executeQuery()) {
+            if (!rs.next()) {
+                throw new IllegalStateException("SQLiteDoneException");
+            }
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String simpleQueryForString() {
+        try (final ResultSet rs = mStatement.executeQuery()) {
+            if (!rs.next()) {
+                throw new IllegalStateException("SQLiteDoneException");
+            }
+            return rs.getString(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            mStatement.close();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.example;
+
+import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteObject;
+import droidkit.annotation.SQLitePk;
+
+@SQLiteObject("accounts")
+public class Account {
+
+    @SQLitePk
+    long mId;
+
+    @SQLiteColumn
+    String mLogin;
+
+    @SQLiteColumn(enumAsInteger = true)
+    Status mStatus;
+
+}
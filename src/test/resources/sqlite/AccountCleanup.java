@@ -0,0 +1,10 @@
+package com.example;
+
+import droidkit.annotation.SQLiteQuery;
+
+public interface AccountCleanup {
+
+    @SQLiteQuery("DELETE FROM accounts WHERE login IN (SELECT name FROM authors)")
+    int removeAuthors();
+
+}
@@ -0,0 +1,21 @@
+package com.example;
+
+import droidkit.annotation.SQLiteQuery;
+
+import java.util.List;
+
+public interface AccountQueries {
+
+    @SQLiteQuery("SELECT * FROM accounts WHERE status = ? ORDER BY login")
+    List<Account> withStatus(Status status);
+
+    @SQLiteQuery("SELECT * FROM accounts WHERE login = ?")
+    Account byLogin(String login);
+
+    @SQLiteQuery("SELECT COUNT(*) FROM accounts WHERE status <> ?")
+    long countNot(Status status);
+
+    @SQLiteQuery("UPDATE accounts SET status = ? WHERE login = ?")
+    int setStatus(Status status, String login);
+
+}
@@ -0,0 +1,15 @@
+package com.example;
+
+import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteObject;
+
+@SQLiteObject(value = "active_rates", primaryKey = {"base", "quote"}, activeRecord = true)
+public class ActiveRate {
+
+    @SQLiteColumn
+    String mBase;
+
+    @SQLiteColumn
+    String mQuote;
+
+}
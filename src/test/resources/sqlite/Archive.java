@@ -0,0 +1,18 @@
+package com.example;
+
+import droidkit.annotation.SQLiteObject;
+import droidkit.annotation.SQLitePk;
+import droidkit.annotation.SQLiteRelation;
+
+import java.util.List;
+
+@SQLiteObject("archives")
+public class Archive {
+
+    @SQLitePk
+    long mId;
+
+    @SQLiteRelation(lazy = true)
+    List<Publisher> mPublishers;
+
+}
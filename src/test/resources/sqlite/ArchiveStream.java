@@ -0,0 +1,45 @@
+package com.example;
+
+import android.database.Cursor;
+import droidkit.test.JdbcClient;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Streams three archives and returns the number of distinct lazy proxies followed by the row id of each one.
+ */
+public class ArchiveStream implements Callable<long[]> {
+
+    @Override
+    public long[] call() throws Exception {
+        final JdbcClient client = new JdbcClient();
+        Publisher$SQLiteHelper.createTable(client);
+        Archive$SQLiteHelper.createTable(client);
+        Archive$SQLiteHelper.createRelationTables(client);
+        for (int i = 0; i < 3; ++i) {
+            client.execSQL("INSERT INTO archives DEFAULT VALUES;");
+        }
+        final Set<List<Publisher>> proxies = Collections.newSetFromMap(new IdentityHashMap<List<Publisher>, Boolean>());
+        final long[] result = new long[4];
+        int row = 0;
+        final Cursor cursor = client.query("SELECT * FROM archives ORDER BY _id;");
+        try {
+            for (final Archive archive : Archive$SQLiteHelper.iterate(cursor)) {
+                proxies.add(archive.mPublishers);
+                final Field rowId = archive.mPublishers.getClass().getDeclaredField("mRowId");
+                rowId.setAccessible(true);
+                result[++row] = rowId.getLong(archive.mPublishers);
+            }
+        } finally {
+            cursor.close();
+        }
+        result[0] = proxies.size();
+        return result;
+    }
+
+}
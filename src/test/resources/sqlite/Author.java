@@ -0,0 +1,16 @@
+package com.example;
+
+import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteObject;
+import droidkit.annotation.SQLitePk;
+
+@SQLiteObject("authors")
+public class Author {
+
+    @SQLitePk
+    long mId;
+
+    @SQLiteColumn
+    String mName;
+
+}
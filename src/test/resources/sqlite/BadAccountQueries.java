@@ -0,0 +1,12 @@
+package com.example;
+
+import droidkit.annotation.SQLiteQuery;
+
+import java.util.List;
+
+public interface BadAccountQueries {
+
+    @SQLiteQuery("SELECT * FROM accounts WHERE status IN (?)")
+    List<Account> withStatus(Status status);
+
+}
@@ -0,0 +1,43 @@
+package com.example;
+
+import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteFk;
+import droidkit.annotation.SQLiteObject;
+import droidkit.annotation.SQLitePk;
+
+import java.math.BigDecimal;
+
+@SQLiteObject("books")
+public class Book {
+
+    @SQLitePk
+    long mId;
+
+    @SQLiteFk(Author.class)
+    long mAuthorId;
+
+    @SQLiteFk(Publisher.class)
+    long mPublisherId;
+
+    @SQLiteColumn
+    long mPages;
+
+    @SQLiteColumn(scale = 2)
+    BigDecimal mPrice;
+
+    @SQLiteColumn(scale = 6)
+    BigDecimal mRate;
+
+    public void setPages(long pages) {
+        mPages = pages;
+    }
+
+    public void setPrice(BigDecimal price) {
+        mPrice = price;
+    }
+
+    public void setRate(BigDecimal rate) {
+        mRate = rate;
+    }
+
+}
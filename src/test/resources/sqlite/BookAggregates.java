@@ -0,0 +1,36 @@
+package com.example;
+
+import droidkit.test.JdbcClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads MAX/MIN/SUM of an empty table, of a single zero row and of two rows.
+ */
+public class BookAggregates implements Callable<List<String>> {
+
+    @Override
+    public List<String> call() {
+        final JdbcClient client = new JdbcClient();
+        Author$SQLiteHelper.createTable(client);
+        Publisher$SQLiteHelper.createTable(client);
+        Book$SQLiteHelper.createTable(client);
+        final List<String> values = new ArrayList<>();
+        read(client, values);
+        client.execSQL("INSERT INTO books(pages, price) VALUES(0, 0);");
+        read(client, values);
+        client.execSQL("INSERT INTO books(pages, price) VALUES(7, 125);");
+        read(client, values);
+        return values;
+    }
+
+    private static void read(JdbcClient client, List<String> values) {
+        values.add(Book$SQLiteHelper.maxPages(client) + "/" + Book$SQLiteHelper.minPages(client) + "/" +
+                Book$SQLiteHelper.sumPages(client));
+        values.add(Book$SQLiteHelper.maxPrice(client) + "/" + Book$SQLiteHelper.minPrice(client) + "/" +
+                Book$SQLiteHelper.sumPrice(client));
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.example;
+
+import android.database.Cursor;
+import droidkit.test.JdbcClient;
+
+import java.math.BigDecimal;
+import java.util.concurrent.Callable;
+
+/**
+ * Prices with more fractional digits than the column scale are saved and read back.
+ */
+public class BookPrice implements Callable<String[]> {
+
+    @Override
+    public String[] call() {
+        final JdbcClient client = new JdbcClient();
+        Author$SQLiteHelper.createTable(client);
+        Publisher$SQLiteHelper.createTable(client);
+        Book$SQLiteHelper.createTable(client);
+        final Author author = new Author();
+        Author$SQLiteHelper.save(client, author);
+        final Publisher publisher = new Publisher();
+        Publisher$SQLiteHelper.save(client, publisher);
+        final Book book = new Book();
+        book.mAuthorId = author.mId;
+        book.mPublisherId = publisher.mId;
+        book.mPrice = new BigDecimal("1.234");
+        book.mRate = new BigDecimal("0.1234565");
+        Book$SQLiteHelper.save(client, book);
+        final Book loaded = load(client, book.mId);
+        book.mPrice = new BigDecimal("2.345");
+        Book$SQLiteHelper.update(client, book);
+        return new String[]{
+                loaded.mPrice.toPlainString(),
+                loaded.mRate.toPlainString(),
+                load(client, book.mId).mPrice.toPlainString()
+        };
+    }
+
+    private static Book load(JdbcClient client, long rowId) {
+        final Cursor cursor = client.query("SELECT * FROM books WHERE _id = ?;", rowId);
+        try {
+            return Book$SQLiteHelper.instantiateAll(client, cursor).get(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.example;
+
+import droidkit.annotation.SQLiteObject;
+import droidkit.annotation.SQLitePk;
+import droidkit.annotation.SQLiteRelation;
+
+import java.util.List;
+
+@SQLiteObject("libraries")
+public class Library {
+
+    @SQLitePk
+    long mId;
+
+    @SQLiteRelation
+    Author mCurator;
+
+    @SQLiteRelation
+    List<Publisher> mPublishers;
+
+}
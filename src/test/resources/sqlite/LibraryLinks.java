@@ -0,0 +1,34 @@
+package com.example;
+
+import droidkit.test.JdbcClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+public class LibraryLinks implements Callable<long[]> {
+
+    @Override
+    public long[] call() {
+        final JdbcClient client = new JdbcClient();
+        Author$SQLiteHelper.createTable(client);
+        Publisher$SQLiteHelper.createTable(client);
+        Library$SQLiteHelper.createTable(client);
+        Library$SQLiteHelper.createRelationTables(client);
+        final Publisher first = new Publisher();
+        final Publisher second = new Publisher();
+        final Library library = new Library();
+        library.mPublishers = new ArrayList<>(Arrays.asList(first, second));
+        Library$SQLiteHelper.save(client, library);
+        final long[] counts = new long[3];
+        counts[0] = client.queryForLong("SELECT COUNT(*) FROM libraries_publishers;");
+        Library$SQLiteHelper.save(client, library);
+        counts[1] = client.queryForLong("SELECT COUNT(*) FROM libraries_publishers;");
+        library.mPublishers.remove(first);
+        Library$SQLiteHelper.save(client, library);
+        counts[2] = client.queryForLong("SELECT COUNT(*) FROM libraries_publishers WHERE publishers_id = ?;",
+                second.mId);
+        return counts;
+    }
+
+}
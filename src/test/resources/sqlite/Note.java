@@ -0,0 +1,20 @@
+package com.example;
+
+import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteObject;
+import droidkit.annotation.SQLitePk;
+
+@SQLiteObject(value = "notes", dirtyTracking = true, identityMapSize = 64)
+public class Note {
+
+    @SQLitePk
+    long mId;
+
+    @SQLiteColumn(index = true)
+    String mText;
+
+    public void setText(String text) {
+        mText = text;
+    }
+
+}
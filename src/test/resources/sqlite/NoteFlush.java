@@ -0,0 +1,43 @@
+package com.example;
+
+import droidkit.test.JdbcClient;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * The text is changed again while the first flush is writing it.
+ */
+public class NoteFlush implements Callable<String> {
+
+    @Override
+    public String call() {
+        final Note note = new Note();
+        final JdbcClient client = new JdbcClient() {
+            @Override
+            protected void onExecute(String sql) {
+                if (sql.startsWith("UPDATE notes") && "first".equals(note.mText)) {
+                    note.setText("second");
+                }
+            }
+        };
+        Note$SQLiteHelper.createTable(client);
+        Note$SQLiteHelper.attachInfo(client);
+        Note$SQLiteHelper.setFlushExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+            }
+        });
+        Note$SQLiteHelper.save(client, note);
+        note.setText("first");
+        Note$SQLiteHelper.flush();
+        Note$SQLiteHelper.flush();
+        final android.database.Cursor cursor = client.query("SELECT text FROM notes WHERE _id = ?;", note.mId);
+        try {
+            return cursor.moveToNext() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.example;
+
+import droidkit.test.JdbcClient;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * The first flush fails, the dirty columns must survive for the next one.
+ */
+public class NoteFlushFailure implements Callable<String> {
+
+    private boolean mFailed;
+
+    @Override
+    public String call() {
+        final JdbcClient client = new JdbcClient() {
+            @Override
+            protected void onExecute(String sql) {
+                if (sql.startsWith("UPDATE notes") && !mFailed) {
+                    mFailed = true;
+                    throw new IllegalStateException("disk I/O error");
+                }
+            }
+        };
+        Note$SQLiteHelper.createTable(client);
+        Note$SQLiteHelper.attachInfo(client);
+        Note$SQLiteHelper.setFlushExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+            }
+        });
+        final Note note = new Note();
+        Note$SQLiteHelper.save(client, note);
+        note.setText("text");
+        try {
+            Note$SQLiteHelper.flush();
+        } catch (IllegalStateException expected) {
+            Note$SQLiteHelper.flush();
+        }
+        final android.database.Cursor cursor = client.query("SELECT text FROM notes WHERE _id = ?;", note.mId);
+        try {
+            return cursor.moveToNext() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.example;
+
+import android.database.Cursor;
+import droidkit.test.JdbcClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Fills the 64 entry identity map, touches the oldest note and then overflows the map by one.
+ */
+public class NoteIdentities implements Callable<boolean[]> {
+
+    @Override
+    public boolean[] call() {
+        final JdbcClient client = new JdbcClient();
+        Note$SQLiteHelper.createTable(client);
+        final List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 64; ++i) {
+            final Note note = new Note();
+            Note$SQLiteHelper.save(client, note);
+            notes.add(note);
+        }
+        final boolean touched = load(client, notes.get(0).mId) == notes.get(0);
+        final Note overflow = new Note();
+        Note$SQLiteHelper.save(client, overflow);
+        notes.add(overflow);
+        return new boolean[]{
+                touched,
+                load(client, notes.get(0).mId) == notes.get(0),
+                load(client, notes.get(1).mId) == notes.get(1),
+                load(client, overflow.mId) == overflow
+        };
+    }
+
+    private static Note load(JdbcClient client, long rowId) {
+        final Cursor cursor = client.query("SELECT * FROM notes WHERE _id = ?;", rowId);
+        try {
+            return Note$SQLiteHelper.instantiateAll(client, cursor).get(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.example;
+
+import droidkit.sqlite.SQLiteMetaData;
+import droidkit.sqlite.SQLiteStmt;
+import droidkit.test.JdbcClient;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Runs a cached query, releases the statements of every helper and runs it again.
+ */
+public class QueryRelease implements Callable<int[]> {
+
+    @Override
+    public int[] call() {
+        final CountingClient client = new CountingClient();
+        Account$SQLiteHelper.createTable(client);
+        final AccountQueries queries = new AccountQueries$Impl(client);
+        queries.countNot(Status.ACTIVE);
+        queries.countNot(Status.ACTIVE);
+        final int cached = client.mCompiled;
+        SQLiteMetaData.releaseStatements();
+        queries.countNot(Status.ACTIVE);
+        return new int[]{cached, client.mCompiled};
+    }
+
+    static class CountingClient extends JdbcClient {
+
+        int mCompiled;
+
+        @Override
+        public SQLiteStmt compileStatement(String sql) {
+            if (sql.startsWith("SELECT COUNT(*) FROM accounts WHERE status")) {
+                ++mCompiled;
+            }
+            return super.compileStatement(sql);
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.example;
+
+import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteObject;
+
+@SQLiteObject(value = "rates", primaryKey = {"base", "quote"}, withoutRowId = true)
+public class Rate {
+
+    @SQLiteColumn
+    String mBase;
+
+    @SQLiteColumn
+    String mQuote;
+
+    @SQLiteColumn
+    double mValue;
+
+}
@@ -0,0 +1,16 @@
+package com.example;
+
+import droidkit.annotation.SQLiteObject;
+import droidkit.annotation.SQLitePk;
+import droidkit.annotation.SQLiteRelation;
+
+@SQLiteObject(value = "shelves", identityMapSize = 16)
+public class Shelf {
+
+    @SQLitePk
+    long mId;
+
+    @SQLiteRelation
+    Author mKeeper;
+
+}
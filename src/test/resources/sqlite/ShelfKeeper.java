@@ -0,0 +1,47 @@
+package com.example;
+
+import android.database.Cursor;
+import droidkit.test.JdbcClient;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * The keeper link changes behind an identity-mapped shelf that is loaded again.
+ */
+public class ShelfKeeper implements Callable<String> {
+
+    @Override
+    public String call() {
+        final JdbcClient client = new JdbcClient();
+        Author$SQLiteHelper.createTable(client);
+        Shelf$SQLiteHelper.createTable(client);
+        Shelf$SQLiteHelper.createRelationTables(client);
+        final Author first = new Author();
+        first.mName = "first";
+        final Author second = new Author();
+        second.mName = "second";
+        Author$SQLiteHelper.save(client, second);
+        final Shelf shelf = new Shelf();
+        shelf.mKeeper = first;
+        Shelf$SQLiteHelper.save(client, shelf);
+        load(client);
+        client.executeUpdateDelete("UPDATE shelves_authors SET authors_id = ? WHERE shelves_id = ?;",
+                second.mId, shelf.mId);
+        final List<Shelf> shelves = load(client);
+        if (shelves.get(0) != shelf) {
+            throw new IllegalStateException("identity map did not return the saved shelf");
+        }
+        return shelf.mKeeper.mName;
+    }
+
+    private static List<Shelf> load(JdbcClient client) {
+        final Cursor cursor = client.query("SELECT * FROM shelves;");
+        try {
+            return Shelf$SQLiteHelper.instantiateAll(client, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
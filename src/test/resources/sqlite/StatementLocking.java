@@ -0,0 +1,183 @@
+package com.example;
+
+import droidkit.sqlite.SQLiteStmt;
+import droidkit.test.JdbcClient;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One thread owns the connection inside a transaction while another waits for it with a cached statement in hand.
+ */
+public class StatementLocking implements Callable<Boolean> {
+
+    @Override
+    public Boolean call() throws Exception {
+        final LockingClient client = new LockingClient();
+        Author$SQLiteHelper.createTable(client);
+        final Thread[] reader = new Thread[1];
+        final Thread owner = daemon(new Runnable() {
+            @Override
+            public void run() {
+                client.beginTransaction();
+                try {
+                    reader[0] = daemon(new Runnable() {
+                        @Override
+                        public void run() {
+                            Author$SQLiteHelper.count(client);
+                        }
+                    });
+                    while (!client.mConnection.hasQueuedThreads()) {
+                        Thread.yield();
+                    }
+                    Author$SQLiteHelper.save(client, new Author());
+                    Author$SQLiteHelper.count(client);
+                    client.setTransactionSuccessful();
+                } finally {
+                    client.endTransaction();
+                }
+            }
+        });
+        owner.join(TimeUnit.SECONDS.toMillis(5));
+        if (owner.isAlive()) {
+            return false;
+        }
+        reader[0].join(TimeUnit.SECONDS.toMillis(5));
+        return !reader[0].isAlive();
+    }
+
+    private static Thread daemon(Runnable runnable) {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    static class LockingClient extends JdbcClient {
+
+        final ReentrantLock mConnection = new ReentrantLock();
+
+        @Override
+        public void beginTransaction() {
+            mConnection.lock();
+            super.beginTransaction();
+        }
+
+        @Override
+        public void endTransaction() {
+            super.endTransaction();
+            mConnection.unlock();
+        }
+
+        @Override
+        public SQLiteStmt compileStatement(String sql) {
+            mConnection.lock();
+            try {
+                return new LockingStmt(super.compileStatement(sql), mConnection);
+            } finally {
+                mConnection.unlock();
+            }
+        }
+
+    }
+
+    static class LockingStmt implements SQLiteStmt {
+
+        private final SQLiteStmt mStmt;
+
+        private final ReentrantLock mConnection;
+
+        LockingStmt(SQLiteStmt stmt, ReentrantLock connection) {
+            mStmt = stmt;
+            mConnection = connection;
+        }
+
+        @Override
+        public void bindNull(int i) {
+            mStmt.bindNull(i);
+        }
+
+        @Override
+        public void bindLong(int i, long v) {
+            mStmt.bindLong(i, v);
+        }
+
+        @Override
+        public void bindDouble(int i, double v) {
+            mStmt.bindDouble(i, v);
+        }
+
+        @Override
+        public void bindString(int i, String v) {
+            mStmt.bindString(i, v);
+        }
+
+        @Override
+        public void bindBlob(int i, byte[] v) {
+            mStmt.bindBlob(i, v);
+        }
+
+        @Override
+        public void clearBindings() {
+            mStmt.clearBindings();
+        }
+
+        @Override
+        public void execute() {
+            mConnection.lock();
+            try {
+                mStmt.execute();
+            } finally {
+                mConnection.unlock();
+            }
+        }
+
+        @Override
+        public long executeInsert() {
+            mConnection.lock();
+            try {
+                return mStmt.executeInsert();
+            } finally {
+                mConnection.unlock();
+            }
+        }
+
+        @Override
+        public int executeUpdateDelete() {
+            mConnection.lock();
+            try {
+                return mStmt.executeUpdateDelete();
+            } finally {
+                mConnection.unlock();
+            }
+        }
+
+        @Override
+        public long simpleQueryForLong() {
+            mConnection.lock();
+            try {
+                return mStmt.simpleQueryForLong();
+            } finally {
+                mConnection.unlock();
+            }
+        }
+
+        @Override
+        public String simpleQueryForString() {
+            mConnection.lock();
+            try {
+                return mStmt.simpleQueryForString();
+            } finally {
+                mConnection.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            mStmt.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.example;
+
+import droidkit.annotation.SQLiteEnumCode;
+
+public enum Status {
+
+    @SQLiteEnumCode(10)
+    ACTIVE,
+
+    @SQLiteEnumCode(20)
+    BLOCKED
+
+}
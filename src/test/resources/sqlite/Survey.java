@@ -0,0 +1,28 @@
+package com.example;
+
+import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteObject;
+import droidkit.annotation.SQLitePk;
+
+@SQLiteObject("surveys")
+public class Survey {
+
+    @SQLitePk
+    long mId;
+
+    @SQLiteColumn
+    long mA;
+
+    @SQLiteColumn
+    long mB;
+
+    @SQLiteColumn
+    long mC;
+
+    @SQLiteColumn
+    long mD;
+
+    @SQLiteColumn
+    long mE;
+
+}
@@ -0,0 +1,128 @@
+package com.example;
+
+import droidkit.sqlite.SQLiteStmt;
+import droidkit.test.JdbcClient;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Updates every subset of the five survey columns and returns the partial updates left open, then the
+ * statements compiled for repeating the last update.
+ */
+public class SurveyUpdates implements Callable<int[]> {
+
+    @Override
+    public int[] call() {
+        final CountingClient client = new CountingClient();
+        Survey$SQLiteHelper.createTable(client);
+        final Survey survey = new Survey();
+        Survey$SQLiteHelper.save(client, survey);
+        for (int mask = 1; mask < 32; ++mask) {
+            update(client, survey, mask);
+        }
+        final int compiled = client.mCompiled;
+        update(client, survey, 31);
+        return new int[]{client.mCompiled - client.mClosed, client.mCompiled - compiled};
+    }
+
+    private static void update(JdbcClient client, Survey survey, int mask) {
+        final Survey snapshot = new Survey();
+        snapshot.mId = survey.mId;
+        snapshot.mA = (mask & 1) == 0 ? survey.mA : survey.mA + 1;
+        snapshot.mB = (mask & 2) == 0 ? survey.mB : survey.mB + 1;
+        snapshot.mC = (mask & 4) == 0 ? survey.mC : survey.mC + 1;
+        snapshot.mD = (mask & 8) == 0 ? survey.mD : survey.mD + 1;
+        snapshot.mE = (mask & 16) == 0 ? survey.mE : survey.mE + 1;
+        Survey$SQLiteHelper.update(client, survey, snapshot);
+    }
+
+    static class CountingClient extends JdbcClient {
+
+        int mCompiled;
+
+        int mClosed;
+
+        @Override
+        public SQLiteStmt compileStatement(String sql) {
+            final SQLiteStmt stmt = super.compileStatement(sql);
+            if (!sql.startsWith("UPDATE surveys SET")) {
+                return stmt;
+            }
+            ++mCompiled;
+            return new ClosingStmt(stmt);
+        }
+
+        class ClosingStmt implements SQLiteStmt {
+
+            private final SQLiteStmt mStmt;
+
+            ClosingStmt(SQLiteStmt stmt) {
+                mStmt = stmt;
+            }
+
+            @Override
+            public void bindNull(int i) {
+                mStmt.bindNull(i);
+            }
+
+            @Override
+            public void bindLong(int i, long v) {
+                mStmt.bindLong(i, v);
+            }
+
+            @Override
+            public void bindDouble(int i, double v) {
+                mStmt.bindDouble(i, v);
+            }
+
+            @Override
+            public void bindString(int i, String v) {
+                mStmt.bindString(i, v);
+            }
+
+            @Override
+            public void bindBlob(int i, byte[] v) {
+                mStmt.bindBlob(i, v);
+            }
+
+            @Override
+            public void clearBindings() {
+                mStmt.clearBindings();
+            }
+
+            @Override
+            public void execute() {
+                mStmt.execute();
+            }
+
+            @Override
+            public long executeInsert() {
+                return mStmt.executeInsert();
+            }
+
+            @Override
+            public int executeUpdateDelete() {
+                return mStmt.executeUpdateDelete();
+            }
+
+            @Override
+            public long simpleQueryForLong() {
+                return mStmt.simpleQueryForLong();
+            }
+
+            @Override
+            public String simpleQueryForString() {
+                return mStmt.simpleQueryForString();
+            }
+
+            @Override
+            public void close() {
+                ++mClosed;
+                mStmt.close();
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.example;
+
+import droidkit.annotation.SQLiteColumn;
+import droidkit.annotation.SQLiteObject;
+
+@SQLiteObject(value = "tracked_rates", primaryKey = {"base", "quote"}, dirtyTracking = true)
+public class TrackedRate {
+
+    @SQLiteColumn
+    String mBase;
+
+    @SQLiteColumn
+    String mQuote;
+
+}
@@ -0,0 +1,6 @@
+package android.database;
+public interface Cursor extends java.io.Closeable {
+    int getCount(); boolean moveToNext(); boolean moveToFirst(); int getColumnIndex(String n); int getColumnIndexOrThrow(String n);
+    long getLong(int i); int getInt(int i); short getShort(int i); double getDouble(int i); float getFloat(int i);
+    String getString(int i); byte[] getBlob(int i); boolean isNull(int i); void close(); int getColumnCount(); int getPosition(); boolean moveToPosition(int p);
+}
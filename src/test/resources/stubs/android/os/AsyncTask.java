@@ -0,0 +1,2 @@
+package android.os;
+public abstract class AsyncTask<P, G, R> { public static final java.util.concurrent.Executor SERIAL_EXECUTOR = null; }
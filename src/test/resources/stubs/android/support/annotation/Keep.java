@@ -0,0 +1,2 @@
+package android.support.annotation;
+public @interface Keep {}
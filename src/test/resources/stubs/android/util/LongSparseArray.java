@@ -0,0 +1,10 @@
+package android.util;
+public class LongSparseArray<E> {
+    private final java.util.TreeMap<Long, E> mMap = new java.util.TreeMap<>();
+    public LongSparseArray() {} public LongSparseArray(int c) {}
+    public void put(long k, E v) { mMap.put(k, v); } public E get(long k) { return mMap.get(k); }
+    public void remove(long k) { mMap.remove(k); } public void delete(long k) { mMap.remove(k); }
+    public int size() { return mMap.size(); } public void clear() { mMap.clear(); }
+    public long keyAt(int i) { return new java.util.ArrayList<>(mMap.keySet()).get(i); }
+    public E valueAt(int i) { return mMap.get(keyAt(i)); } public void removeAt(int i) { mMap.remove(keyAt(i)); }
+}
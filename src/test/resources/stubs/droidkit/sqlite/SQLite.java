@@ -0,0 +1,2 @@
+package droidkit.sqlite;
+public class SQLite { public static <T> java.util.List<T> rawQuery(Class<T> t, String sql, Object... args) { return null; } }
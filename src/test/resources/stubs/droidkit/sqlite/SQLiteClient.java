@@ -0,0 +1,6 @@
+package droidkit.sqlite;
+public interface SQLiteClient {
+    long executeInsert(String sql, Object... args); int executeUpdateDelete(String sql, Object... args);
+    android.database.Cursor query(String sql, Object... args); SQLiteStmt compileStatement(String sql);
+    void beginTransaction(); void setTransactionSuccessful(); void endTransaction();
+}
@@ -0,0 +1,5 @@
+package droidkit.sqlite;
+public interface SQLiteDb {
+    SQLiteStmt compileStatement(String sql); void execSQL(String sql);
+    void beginTransaction(); void setTransactionSuccessful(); void endTransaction();
+}
@@ -0,0 +1,2 @@
+package droidkit.sqlite;
+public class SQLiteProvider { public static void attachHelper(Class<?> h) {} }
@@ -0,0 +1,2 @@
+package droidkit.sqlite;
+public class SQLiteSchema { public static void notifyChange(Class<?> t) {} public static void attachTableInfo(Class<?> t, String n, Class<?> h) {} }
@@ -0,0 +1,5 @@
+package droidkit.sqlite;
+public interface SQLiteStmt {
+    void bindNull(int i); void bindLong(int i, long v); void bindDouble(int i, double v); void bindString(int i, String v); void bindBlob(int i, byte[] v);
+    void clearBindings(); void execute(); long executeInsert(); int executeUpdateDelete(); long simpleQueryForLong(); String simpleQueryForString(); void close();
+}
@@ -0,0 +1,9 @@
+package droidkit.util;
+import android.database.Cursor;
+public class Cursors {
+ public static long getLong(Cursor c, String n){return 0;} public static int getInt(Cursor c, String n){return 0;} public static short getShort(Cursor c, String n){return 0;}
+ public static double getDouble(Cursor c, String n){return 0;} public static float getFloat(Cursor c, String n){return 0;} public static boolean getBoolean(Cursor c, String n){return false;}
+ public static String getString(Cursor c, String n){return null;} public static byte[] getBlob(Cursor c, String n){return null;}
+ public static java.math.BigDecimal getBigDecimal(Cursor c, String n){return null;} public static java.math.BigInteger getBigInteger(Cursor c, String n){return null;}
+ public static <E extends Enum<E>> E getEnum(Cursor c, String n, Class<E> t){return null;}
+}
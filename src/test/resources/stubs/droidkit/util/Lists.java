@@ -0,0 +1,2 @@
+package droidkit.util;
+public class Lists { public static <T> T getFirst(java.util.List<T> l, T d){return d;} }
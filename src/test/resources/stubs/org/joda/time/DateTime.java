@@ -0,0 +1 @@
+package org.joda.time; public class DateTime { public DateTime(long m){} public long getMillis(){return 0;} }